@@ -0,0 +1,78 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.index.SearchIndex;
+import com.featherwaypoints.index.SpatialGrid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The spatial and search indexes on their own, without the manager's
+// locking and copying around them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SpatialGrid spatial;
+    private SearchIndex search;
+    private String[] queries;
+    private double[][] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WaypointGenerator generator = new WaypointGenerator(42);
+        List<Waypoint> waypoints = generator.generate(size);
+        List<Waypoint> overworld = new ArrayList<>();
+        spatial = new SpatialGrid();
+        search = new SearchIndex();
+        for (Waypoint waypoint : waypoints) {
+            search.put(waypoint);
+            if (waypoint.getDimension().equals(WaypointGenerator.OVERWORLD)) {
+                spatial.add(waypoint, waypoint.getX(), waypoint.getY(), waypoint.getZ());
+                overworld.add(waypoint);
+            }
+        }
+        queries = generator.queries(QUERIES);
+        positions = generator.positions(overworld, QUERIES);
+    }
+
+    @Benchmark
+    public List<Waypoint> spatialNearest() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return spatial.nearest(position[0], position[1], position[2], 10, null);
+    }
+
+    @Benchmark
+    public List<Waypoint> spatialWithinRadius() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return spatial.withinRadius(position[0], position[1], position[2], 256, null);
+    }
+
+    @Benchmark
+    public List<Waypoint> spatialWithinBox() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return spatial.withinBox(position[0] - 256, position[1] - 64, position[2] - 256,
+                position[0] + 256, position[1] + 64, position[2] + 256, null);
+    }
+
+    @Benchmark
+    public List<Waypoint> search() {
+        return search.search(queries[next++ & (QUERIES - 1)], null, false);
+    }
+
+    @Benchmark
+    public List<Waypoint> searchTypoTolerant() {
+        return search.search(queries[next++ & (QUERIES - 1)], null, true);
+    }
+}
@@ -0,0 +1,91 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.storage.AtomicFileWriter;
+import com.featherwaypoints.storage.BinaryWaypointCodec;
+import com.featherwaypoints.storage.WaypointJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Persisting batches of edits to a set of POOL waypoints: appended to the
+// journal, or saved the old way by rewriting the whole snapshot. Besides the
+// time per batch, reports the bytes each one writes, journalBytes for the
+// append and snapshotBytes for the rewrite.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    private static final int POOL = 4096;
+
+    @Param({"1", "16", "256"})
+    public int batch;
+
+    private List<Waypoint> pool;
+    private Path directory;
+    private WaypointJournal journal;
+    private Path snapshotFile;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long journalBytes;
+        public long snapshotBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pool = new WaypointGenerator(42).generate(POOL);
+        directory = Files.createTempDirectory("featherwaypoints-bench");
+        journal = new WaypointJournal(directory.resolve("waypoints.journal"));
+        snapshotFile = directory.resolve("waypoints.dat");
+    }
+
+    // Keeps the file from growing across the whole run
+    @Setup(Level.Iteration)
+    public void truncate() throws IOException {
+        journal.truncate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void append(Bytes bytes) throws IOException {
+        Map<String, Waypoint> changes = new LinkedHashMap<>();
+        for (int i = 0; i < batch; i++) {
+            Waypoint waypoint = pool.get(next++ & (POOL - 1));
+            changes.put(waypoint.getId(), waypoint);
+        }
+        long before = journal.getBytesWritten();
+        journal.append(false, changes);
+        bytes.journalBytes += journal.getBytesWritten() - before;
+    }
+
+    // What saving one batch cost before the journal: the whole pool is
+    // written whatever the batch size
+    @Benchmark
+    public void rewrite(Bytes bytes) throws IOException {
+        AtomicFileWriter.write(snapshotFile, out -> {
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+            BinaryWaypointCodec.writeSnapshot(dataOut, pool);
+            dataOut.flush();
+        });
+        bytes.snapshotBytes += Files.size(snapshotFile);
+    }
+}
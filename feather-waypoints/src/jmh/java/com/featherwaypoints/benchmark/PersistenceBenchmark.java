@@ -0,0 +1,90 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.storage.AtomicFileWriter;
+import com.featherwaypoints.storage.BinaryWaypointCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Saving and loading a whole waypoint set: the snapshot codec on its own,
+// the atomic write to disk, and a manager starting up from a saved snapshot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<Waypoint> waypoints;
+    private byte[] encoded;
+    private ByteArrayOutputStream buffer;
+    private Path directory;
+    private Path snapshotFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        waypoints = new WaypointGenerator(42).generate(size);
+        buffer = new ByteArrayOutputStream(size * 64);
+        encoded = encode();
+        directory = Files.createTempDirectory("featherwaypoints-bench");
+        // Where the manager looks for its snapshot
+        snapshotFile = directory.resolve("waypoints.dat");
+        Files.write(snapshotFile, encoded);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public byte[] encodeSnapshot() throws IOException {
+        return encode();
+    }
+
+    @Benchmark
+    public List<Waypoint> decodeSnapshot() throws IOException {
+        return BinaryWaypointCodec.readSnapshot(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    @Benchmark
+    public void saveSnapshot() throws IOException {
+        AtomicFileWriter.write(snapshotFile, out -> {
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+            BinaryWaypointCodec.writeSnapshot(dataOut, waypoints);
+            dataOut.flush();
+        });
+    }
+
+    @Benchmark
+    public int loadManager() {
+        WaypointManager manager = new WaypointManager(directory);
+        try {
+            return manager.getWaypointCount();
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private byte[] encode() throws IOException {
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        BinaryWaypointCodec.writeSnapshot(out, waypoints);
+        out.flush();
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.storage.JsonWaypointStore;
+import com.featherwaypoints.storage.MemoryWaypointStore;
+import com.featherwaypoints.storage.WaypointStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The same workload against each way of storing waypoints: builtin is the
+// snapshot and journal the mod uses, json and memory are WaypointStores.
+// persistEdit moves one waypoint and waits until it is saved; load starts a
+// manager over what was saved.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({"builtin", "json", "memory"})
+    public String backend;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Path directory;
+    private MemoryWaypointStore memory;
+    private WaypointManager manager;
+    private List<Waypoint> waypoints;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("featherwaypoints-bench");
+        memory = new MemoryWaypointStore();
+        manager = open();
+        waypoints = new WaypointGenerator(42).generate(size);
+        for (Waypoint waypoint : waypoints) {
+            manager.addWaypoint(waypoint);
+        }
+        manager.flush();
+        manager.awaitPersisted(1, TimeUnit.MINUTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        manager.shutdown();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void persistEdit() throws InterruptedException {
+        Waypoint waypoint = waypoints.get(next++ % waypoints.size());
+        waypoint.setX(waypoint.getX() + 1);
+        manager.updateWaypoint(waypoint);
+        manager.flush();
+        manager.awaitPersisted(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public int load() {
+        WaypointManager loaded = open();
+        try {
+            return loaded.getWaypointCount();
+        } finally {
+            loaded.shutdown();
+        }
+    }
+
+    private WaypointManager open() {
+        switch (backend) {
+            case "json":
+                return new WaypointManager(directory, new JsonWaypointStore(directory.resolve("store.json")));
+            case "memory":
+                return new WaypointManager(directory, memory);
+            default:
+                return new WaypointManager(directory);
+        }
+    }
+}
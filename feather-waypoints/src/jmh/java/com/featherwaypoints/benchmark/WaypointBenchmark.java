@@ -0,0 +1,36 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// getDistanceTo over a whole waypoint set, as a linear scan would call it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaypointBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Waypoint[] waypoints;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Waypoint> generated = new WaypointGenerator(42).generate(size);
+        waypoints = generated.toArray(new Waypoint[0]);
+    }
+
+    @Benchmark
+    public double getDistanceTo() {
+        double nearest = Double.MAX_VALUE;
+        for (Waypoint waypoint : waypoints) {
+            nearest = Math.min(nearest, waypoint.getDistanceTo(120.5, 64, -340.5));
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,132 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic waypoint sets shaped like a long-running world: most waypoints in
+// the overworld, gathered around a few bases with the odd one out in the
+// wilderness, grouped into nested groups and named from a small vocabulary
+// so searches find realistic numbers of matches. The same seed always gives
+// the same waypoints, ids aside.
+public final class WaypointGenerator {
+    public static final String OVERWORLD = "minecraft:overworld";
+    public static final String NETHER = "minecraft:the_nether";
+    public static final String END = "minecraft:the_end";
+
+    private static final String[] WORDS = {
+            "base", "home", "farm", "iron", "gold", "diamond", "village", "portal", "spawner", "mine",
+            "storage", "outpost", "temple", "fortress", "bastion", "monument", "shulker", "cave", "ravine",
+            "beacon", "wheat", "sugar", "cactus", "blaze", "witch", "slime", "raid", "tower", "bridge", "dock"
+    };
+    private static final String[] GROUPS = {
+            "", "bases", "bases/north", "bases/south", "farms", "farms/mobs", "farms/crops",
+            "travel", "travel/portals", "loot", "loot/structures"
+    };
+    private static final String[] ICONS = {"default", "home", "star", "skull"};
+    // One base per this many waypoints
+    private static final int WAYPOINTS_PER_BASE = 50;
+    private static final double WORLD_RADIUS = 20000;
+    private static final double BASE_SPREAD = 150;
+    private static final double WILDERNESS_CHANCE = 0.1;
+
+    private final Random random;
+
+    public WaypointGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public List<Waypoint> generate(int count) {
+        int bases = Math.max(1, count / WAYPOINTS_PER_BASE);
+        double[] baseX = new double[bases];
+        double[] baseZ = new double[bases];
+        for (int i = 0; i < bases; i++) {
+            baseX[i] = uniform(WORLD_RADIUS);
+            baseZ[i] = uniform(WORLD_RADIUS);
+        }
+
+        List<Waypoint> waypoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String dimension = dimension();
+            // Nether coordinates are an eighth of the overworld's
+            double scale = dimension.equals(NETHER) ? 0.125 : 1.0;
+            double x;
+            double z;
+            if (random.nextDouble() < WILDERNESS_CHANCE) {
+                x = uniform(WORLD_RADIUS);
+                z = uniform(WORLD_RADIUS);
+            } else {
+                int base = random.nextInt(bases);
+                x = baseX[base] + random.nextGaussian() * BASE_SPREAD;
+                z = baseZ[base] + random.nextGaussian() * BASE_SPREAD;
+            }
+            double y = Math.floor(64 + random.nextGaussian() * 20);
+            Waypoint waypoint = new Waypoint(name(i), Math.floor(x * scale), y, Math.floor(z * scale), dimension,
+                    random.nextInt(0x1000000), ICONS[random.nextInt(ICONS.length)],
+                    GROUPS[random.nextInt(GROUPS.length)]);
+            waypoint.setVisible(random.nextInt(20) != 0);
+            waypoint.setBeam(random.nextInt(50) == 0);
+            waypoints.add(waypoint);
+        }
+        return waypoints;
+    }
+
+    // Queries in the proportions a player would type them: whole words,
+    // prefixes of words, and the occasional typo
+    public String[] queries(int count) {
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                queries[i] = word;
+            } else if (kind < 9) {
+                queries[i] = word.substring(0, Math.min(word.length(), 2 + random.nextInt(3)));
+            } else {
+                int at = random.nextInt(word.length());
+                queries[i] = word.substring(0, at) + (char) ('a' + random.nextInt(26)) + word.substring(at + 1);
+            }
+        }
+        return queries;
+    }
+
+    // Points spread like player positions: near a waypoint most of the time
+    public double[][] positions(List<Waypoint> waypoints, int count) {
+        double[][] positions = new double[count][];
+        for (int i = 0; i < count; i++) {
+            if (waypoints.isEmpty() || random.nextInt(4) == 0) {
+                positions[i] = new double[]{uniform(WORLD_RADIUS), 64, uniform(WORLD_RADIUS)};
+            } else {
+                Waypoint near = waypoints.get(random.nextInt(waypoints.size()));
+                positions[i] = new double[]{near.getX() + uniform(64), near.getY(), near.getZ() + uniform(64)};
+            }
+        }
+        return positions;
+    }
+
+    private String dimension() {
+        int roll = random.nextInt(100);
+        if (roll < 80) {
+            return OVERWORLD;
+        }
+        return roll < 95 ? NETHER : END;
+    }
+
+    private String name(int i) {
+        String name = capitalize(WORDS[random.nextInt(WORDS.length)]);
+        if (random.nextBoolean()) {
+            name += " " + capitalize(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return name + " " + i;
+    }
+
+    private double uniform(double radius) {
+        return (random.nextDouble() * 2 - 1) * radius;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.featherwaypoints.benchmark;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.manager.WaypointManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The manager's read paths at realistic sizes, against a manager over a
+// temporary config directory
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaypointManagerBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Path directory;
+    private WaypointManager manager;
+    private String[] queries;
+    private double[][] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("featherwaypoints-bench");
+        manager = new WaypointManager(directory);
+        WaypointGenerator generator = new WaypointGenerator(42);
+        List<Waypoint> waypoints = generator.generate(size);
+        for (Waypoint waypoint : waypoints) {
+            manager.addWaypoint(waypoint);
+        }
+        manager.flush();
+        manager.awaitPersisted(1, TimeUnit.MINUTES);
+        queries = generator.queries(QUERIES);
+        waypoints.removeIf(waypoint -> !waypoint.getDimension().equals(WaypointGenerator.OVERWORLD));
+        positions = generator.positions(waypoints, QUERIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        manager.shutdown();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<Waypoint> searchWaypoints() {
+        return manager.searchWaypoints(queries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public List<Waypoint> getNearestWaypoints() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return manager.getNearestWaypoints(position[0], position[1], position[2], WaypointGenerator.OVERWORLD, 10);
+    }
+
+    @Benchmark
+    public List<Waypoint> getWaypointsWithinRadius() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return manager.getWaypointsWithinRadius(position[0], position[1], position[2],
+                WaypointGenerator.OVERWORLD, 256);
+    }
+
+    @Benchmark
+    public List<Waypoint> getWaypointsInBox() {
+        double[] position = positions[next++ & (QUERIES - 1)];
+        return manager.getWaypointsInBox(WaypointGenerator.OVERWORLD, position[0] - 256, position[1] - 64,
+                position[2] - 256, position[0] + 256, position[1] + 64, position[2] + 256);
+    }
+
+    @Benchmark
+    public List<Waypoint> getVisibleWaypointsInDimension() {
+        return manager.getVisibleWaypointsInDimension(WaypointGenerator.OVERWORLD);
+    }
+}
@@ -0,0 +1,57 @@
+package com.featherwaypoints.render;
+
+import com.featherwaypoints.benchmark.WaypointGenerator;
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.index.ClusterGrid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The CPU side of a rendered frame: culling, clustering and tiering the
+// markers of one dimension, from a camera standing at a base. Lives in the
+// render package to reach the collector, which is package-private.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkerCollectorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Waypoint[] waypoints;
+    private ClusterGrid grid;
+    private MarkerCollector collector;
+    private MarkerInstances instances;
+    private double cameraX;
+    private double cameraZ;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Waypoint> generated = new WaypointGenerator(42).generate(size);
+        generated.removeIf(waypoint -> !waypoint.getDimension().equals(WaypointGenerator.OVERWORLD));
+        waypoints = generated.toArray(new Waypoint[0]);
+        grid = new ClusterGrid(waypoints);
+        cameraX = waypoints[0].getX();
+        cameraZ = waypoints[0].getZ();
+        ViewFrustum frustum = new ViewFrustum();
+        frustum.update(cameraX, 80, cameraZ, 30, 10, 70, 16.0 / 9, 1080);
+        instances = new MarkerInstances();
+        collector = new MarkerCollector(frustum, instances, new RenderStats());
+    }
+
+    @Benchmark
+    public int collectFrame() {
+        collector.begin(cameraX, 80, cameraZ, 1000, 512, 128, 48);
+        grid.visit(collector);
+        collector.finish();
+        return instances.size();
+    }
+
+    @Benchmark
+    public ClusterGrid buildClusterGrid() {
+        return new ClusterGrid(waypoints);
+    }
+}
@@ -1,15 +1,29 @@
 package com.featherwaypoints;
 
+import com.featherwaypoints.command.WaypointCommands;
+import com.featherwaypoints.gui.PerformanceOverlay;
 import com.featherwaypoints.gui.WaypointListScreen;
 import com.featherwaypoints.manager.WaypointManager;
 import com.featherwaypoints.render.WaypointRenderer;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
 import net.minecraft.client.option.KeyBinding;
 import net.minecraft.client.util.InputUtil;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourceType;
+import net.minecraft.server.integrated.IntegratedServer;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.Identifier;
 import org.lwjgl.glfw.GLFW;
 
 public class FeatherWaypointsClient implements ClientModInitializer {
@@ -20,8 +34,8 @@ public class FeatherWaypointsClient implements ClientModInitializer {
     
     @Override
     public void onInitializeClient() {
-        // Initialize waypoint manager
-        WaypointManager.getInstance();
+        // Read settings in the background; waypoints load per world on join
+        WaypointManager.preload();
         
         // Register key bindings
         openWaypointsKey = KeyBindingHelper.registerKeyBinding(new KeyBinding(
@@ -41,28 +55,63 @@ public class FeatherWaypointsClient implements ClientModInitializer {
         // Register client tick event for key handling
         ClientTickEvents.END_CLIENT_TICK.register(this::onClientTick);
         
+        // Each world and server has its own waypoints, loaded only while playing there
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) ->
+            WaypointManager.openShard(getShardName(client)));
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> WaypointManager.closeShard());
+        
+        // Write out any pending waypoint changes before the game exits
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> WaypointManager.closeShardAndWait());
+        
+        // Label widths are cached, so remeasure them when fonts may have changed
+        ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES).registerReloadListener(
+            new SimpleSynchronousResourceReloadListener() {
+                @Override
+                public Identifier getFabricId() {
+                    return new Identifier(MOD_ID, "label_cache");
+                }
+
+                @Override
+                public void reload(ResourceManager manager) {
+                    WaypointRenderer.clearLabelCache();
+                }
+            });
+        
         // Register world render event for waypoint rendering
         WorldRenderEvents.AFTER_TRANSLUCENT.register((context) -> {
             WaypointRenderer.renderWaypoints(context.matrixStack(), context.camera());
         });
+
+        // Performance overlay and /atpoint commands
+        HudRenderCallback.EVENT.register((drawContext, tickDelta) -> PerformanceOverlay.render(drawContext));
+        ClientCommandRegistrationCallback.EVENT.register(
+            (dispatcher, registryAccess) -> WaypointCommands.register(dispatcher));
         
         System.out.println("ATPoint mod initialized by Mr.Aayush Bhandari!");
     }
     
     private void onClientTick(MinecraftClient client) {
+        // Lets the mapped storage backend keep only the current dimension in memory
+        WaypointManager.getInstance().setActiveDimension(
+            client.world != null ? WaypointRenderer.getDimension(client.world).getId() : null);
+
         if (client.player == null || client.world == null) {
             return;
         }
         
         // Handle open waypoints key
         if (openWaypointsKey.wasPressed()) {
-            String currentDimension = client.world.getRegistryKey().getValue().toString();
+            String currentDimension = WaypointRenderer.getDimension(client.world).getId();
             client.setScreen(new WaypointListScreen(currentDimension));
         }
         
         // Handle add waypoint key
         if (addWaypointKey.wasPressed()) {
-            String currentDimension = client.world.getRegistryKey().getValue().toString();
+            String currentDimension = WaypointRenderer.getDimension(client.world).getId();
+            if (!WaypointManager.isReady()) {
+                client.player.sendMessage(net.minecraft.text.Text.literal("§eWaypoints are still loading"), true);
+                return;
+            }
             WaypointManager waypointManager = WaypointManager.getInstance();
             
             // Create waypoint at current position
@@ -85,6 +134,17 @@ public class FeatherWaypointsClient implements ClientModInitializer {
         }
     }
     
+    // Singleplayer worlds by save folder, servers by address; connections
+    // without a server entry, such as Realms, share one shard
+    private static String getShardName(MinecraftClient client) {
+        IntegratedServer server = client.getServer();
+        if (server != null) {
+            return "world_" + server.getSavePath(WorldSavePath.ROOT).normalize().getFileName();
+        }
+        ServerInfo serverInfo = client.getCurrentServerEntry();
+        return "server_" + (serverInfo != null ? serverInfo.address : "unknown");
+    }
+    
     public static String getModId() {
         return MOD_ID;
     }
@@ -0,0 +1,324 @@
+package com.featherwaypoints.command;
+
+import com.featherwaypoints.index.GroupTree;
+import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.manager.WaypointTransfer;
+import com.featherwaypoints.render.WaypointRenderer;
+import com.featherwaypoints.stats.PerformanceReport;
+import com.featherwaypoints.storage.DuplicatePolicy;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.command.CommandSource;
+import net.minecraft.text.Text;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.argument;
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.literal;
+
+// Client-side /atpoint commands:
+//   /atpoint stats               prints the performance numbers to chat
+//   /atpoint stats reset         clears the render and save timings
+//   /atpoint overlay [on|off]    toggles the HUD overlay
+//   /atpoint export [name]       writes every waypoint to exports/<name>.json
+//   /atpoint import <name> [keep|skip|merge|flag]
+//                                merges exports/<name>.json into the waypoints,
+//                                handling near duplicates as import_duplicates
+//                                says unless told otherwise
+//   /atpoint legacy import [keep|skip|merge|flag]
+//                                copies the waypoints kept from before per-world
+//                                storage into the world being played
+//   /atpoint transfer [cancel]   shows or cancels the running import or export
+//   /atpoint group info <group>  shows a group's size, bounds and subgroups
+//   /atpoint group hide|show <group>
+//                                hides or shows a group and all its subgroups
+//   /atpoint group beam on|off <group>
+//                                turns beams on or off for a group and its subgroups
+public final class WaypointCommands {
+    private static final String DEFAULT_EXPORT_NAME = "waypoints";
+
+    // One import or export at a time
+    private static WaypointTransfer transfer;
+
+    private WaypointCommands() {
+    }
+
+    public static void register(CommandDispatcher<FabricClientCommandSource> dispatcher) {
+        dispatcher.register(literal("atpoint")
+                .then(literal("stats")
+                        .executes(WaypointCommands::printStats)
+                        .then(literal("reset").executes(WaypointCommands::resetStats)))
+                .then(literal("overlay")
+                        .executes(context -> setOverlay(context,
+                                !WaypointManager.getInstance().getConfig().isPerformanceOverlay()))
+                        .then(literal("on").executes(context -> setOverlay(context, true)))
+                        .then(literal("off").executes(context -> setOverlay(context, false))))
+                .then(literal("export")
+                        .executes(context -> startExport(context, DEFAULT_EXPORT_NAME))
+                        .then(argument("name", StringArgumentType.word())
+                                .executes(context -> startExport(context,
+                                        StringArgumentType.getString(context, "name")))))
+                .then(literal("import").then(importArguments()))
+                .then(literal("legacy").then(legacyImportArguments()))
+                .then(literal("transfer")
+                        .executes(WaypointCommands::printTransfer)
+                        .then(literal("cancel").executes(WaypointCommands::cancelTransfer)))
+                .then(literal("group")
+                        .then(literal("info").then(groupArgument()
+                                .executes(WaypointCommands::printGroup)))
+                        .then(literal("hide").then(groupArgument()
+                                .executes(context -> setGroupHidden(context, true))))
+                        .then(literal("show").then(groupArgument()
+                                .executes(context -> setGroupHidden(context, false))))
+                        .then(literal("beam")
+                                .then(literal("on").then(groupArgument()
+                                        .executes(context -> setGroupBeam(context, true))))
+                                .then(literal("off").then(groupArgument()
+                                        .executes(context -> setGroupBeam(context, false)))))));
+    }
+
+    // Last on the line so group paths can hold '/' and spaces
+    private static RequiredArgumentBuilder<FabricClientCommandSource, String> groupArgument() {
+        return argument("group", StringArgumentType.greedyString()).suggests(WaypointCommands::suggestGroups);
+    }
+
+    private static CompletableFuture<Suggestions> suggestGroups(CommandContext<FabricClientCommandSource> context,
+                                                                SuggestionsBuilder builder) {
+        if (!WaypointManager.isReady()) {
+            return builder.buildFuture();
+        }
+        return CommandSource.suggestMatching(WaypointManager.getInstance().getAllGroups(), builder);
+    }
+
+    private static RequiredArgumentBuilder<FabricClientCommandSource, String> importArguments() {
+        RequiredArgumentBuilder<FabricClientCommandSource, String> name = argument("name", StringArgumentType.word())
+                .executes(context -> startImport(context, StringArgumentType.getString(context, "name"),
+                        WaypointManager.getInstance().getConfig().getImportDuplicates()));
+        for (DuplicatePolicy policy : DuplicatePolicy.values()) {
+            name.then(literal(policy.name().toLowerCase(Locale.ROOT))
+                    .executes(context -> startImport(context, StringArgumentType.getString(context, "name"), policy)));
+        }
+        return name;
+    }
+
+    private static LiteralArgumentBuilder<FabricClientCommandSource> legacyImportArguments() {
+        LiteralArgumentBuilder<FabricClientCommandSource> importLegacy = literal("import")
+                .executes(context -> startLegacyImport(context,
+                        WaypointManager.getInstance().getConfig().getImportDuplicates()));
+        for (DuplicatePolicy policy : DuplicatePolicy.values()) {
+            importLegacy.then(literal(policy.name().toLowerCase(Locale.ROOT))
+                    .executes(context -> startLegacyImport(context, policy)));
+        }
+        return importLegacy;
+    }
+
+    private static int printStats(CommandContext<FabricClientCommandSource> context) {
+        for (String line : PerformanceReport.lines(WaypointManager.getInstance(), WaypointRenderer.getFrameStats(),
+                WaypointRenderer.getRenderLatency())) {
+            context.getSource().sendFeedback(Text.literal(line));
+        }
+        return 1;
+    }
+
+    private static int resetStats(CommandContext<FabricClientCommandSource> context) {
+        WaypointManager manager = WaypointManager.getInstance();
+        manager.getSaveLatency().reset();
+        WaypointRenderer.getRenderLatency().reset();
+        context.getSource().sendFeedback(Text.literal("§aWaypoint render and save timings reset"));
+        return 1;
+    }
+
+    private static int setOverlay(CommandContext<FabricClientCommandSource> context, boolean enabled) {
+        WaypointManager manager = WaypointManager.getInstance();
+        manager.getConfig().setPerformanceOverlay(enabled);
+        manager.saveConfig();
+        context.getSource().sendFeedback(Text.literal(enabled ? "§aPerformance overlay on" : "§ePerformance overlay off"));
+        return 1;
+    }
+
+    private static int startExport(CommandContext<FabricClientCommandSource> context, String name) {
+        if (isTransferRunning(context) || isLoading(context)) {
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        Path file = manager.getExportDirectory().resolve(name + ".json");
+        transfer = manager.exportWaypointsAsync(file);
+        context.getSource().sendFeedback(Text.literal("§eExporting waypoints to " + file.getFileName() + "..."));
+        reportWhenDone(transfer, file.getFileName().toString());
+        return 1;
+    }
+
+    private static int startImport(CommandContext<FabricClientCommandSource> context, String name,
+                                   DuplicatePolicy policy) {
+        if (isTransferRunning(context) || isLoading(context)) {
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        Path file = manager.getExportDirectory().resolve(name + ".json");
+        if (!file.toFile().isFile()) {
+            context.getSource().sendError(Text.literal("No export named " + name));
+            return 0;
+        }
+        transfer = manager.importWaypointsAsync(file, policy);
+        context.getSource().sendFeedback(Text.literal("§eImporting waypoints from " + file.getFileName() + "..."));
+        reportWhenDone(transfer, file.getFileName().toString());
+        return 1;
+    }
+
+    private static int startLegacyImport(CommandContext<FabricClientCommandSource> context, DuplicatePolicy policy) {
+        if (isTransferRunning(context) || isLoading(context)) {
+            return 0;
+        }
+        if (!WaypointManager.hasGlobalStore()) {
+            context.getSource().sendError(Text.literal("No waypoints from before per-world storage"));
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        transfer = manager.importGlobalStoreAsync(policy);
+        context.getSource().sendFeedback(Text.literal("§eImporting waypoints from before per-world storage..."));
+        reportWhenDone(transfer, "the old waypoint store");
+        return 1;
+    }
+
+    private static int printTransfer(CommandContext<FabricClientCommandSource> context) {
+        WaypointTransfer current = transfer;
+        if (current == null || current.isDone()) {
+            context.getSource().sendFeedback(Text.literal("No waypoint import or export running"));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal(String.format("%s: %.0f%%, %d waypoints",
+                current.getKind() == WaypointTransfer.Kind.IMPORT ? "Importing" : "Exporting",
+                current.getProgress() * 100, current.getTransferred())));
+        return 1;
+    }
+
+    private static int cancelTransfer(CommandContext<FabricClientCommandSource> context) {
+        WaypointTransfer current = transfer;
+        if (current == null || current.isDone()) {
+            context.getSource().sendFeedback(Text.literal("No waypoint import or export running"));
+            return 0;
+        }
+        current.cancel();
+        return 1;
+    }
+
+    private static int printGroup(CommandContext<FabricClientCommandSource> context) {
+        if (isLoading(context)) {
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        String group = StringArgumentType.getString(context, "group");
+        GroupTree.GroupSummary summary = manager.getGroupSummary(group);
+        if (summary.path() == null || summary.totalCount() == 0) {
+            context.getSource().sendError(Text.literal("No group named " + group));
+            return 0;
+        }
+        context.getSource().sendFeedback(Text.literal(String.format("§e%s§r: %d waypoints, %d directly in it%s",
+                summary.path(), summary.totalCount(), summary.directCount(), summary.hidden() ? ", hidden" : "")));
+        context.getSource().sendFeedback(Text.literal(String.format("From %.0f, %.0f, %.0f to %.0f, %.0f, %.0f",
+                summary.minX(), summary.minY(), summary.minZ(), summary.maxX(), summary.maxY(), summary.maxZ())));
+        List<String> children = manager.getChildGroups(summary.path());
+        if (!children.isEmpty()) {
+            context.getSource().sendFeedback(Text.literal("Subgroups: " + String.join(", ", children)));
+        }
+        return 1;
+    }
+
+    private static int setGroupHidden(CommandContext<FabricClientCommandSource> context, boolean hidden) {
+        if (isLoading(context)) {
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        String group = GroupTree.normalize(StringArgumentType.getString(context, "group"));
+        if (group == null) {
+            context.getSource().sendError(Text.literal("Give a group to " + (hidden ? "hide" : "show")));
+            return 0;
+        }
+        manager.setGroupHidden(group, hidden);
+        if (hidden) {
+            context.getSource().sendFeedback(Text.literal("§eHid group " + group + " and its subgroups"));
+        } else if (manager.isGroupHidden(group)) {
+            context.getSource().sendFeedback(Text.literal("§e" + group + " is still hidden by a parent group"));
+        } else {
+            context.getSource().sendFeedback(Text.literal("§aShowing group " + group + " and its subgroups"));
+        }
+        return 1;
+    }
+
+    private static int setGroupBeam(CommandContext<FabricClientCommandSource> context, boolean beam) {
+        if (isLoading(context)) {
+            return 0;
+        }
+        WaypointManager manager = WaypointManager.getInstance();
+        String group = GroupTree.normalize(StringArgumentType.getString(context, "group"));
+        if (group == null) {
+            context.getSource().sendError(Text.literal("Give a group to turn beams " + (beam ? "on" : "off") + " for"));
+            return 0;
+        }
+        manager.setGroupBeam(group, beam);
+        if (beam) {
+            context.getSource().sendFeedback(Text.literal("§aBeams on for group " + group + " and its subgroups"));
+        } else if (manager.isGroupBeam(group)) {
+            context.getSource().sendFeedback(Text.literal("§e" + group + " still has beams from a parent group"));
+        } else {
+            context.getSource().sendFeedback(Text.literal("§eBeams off for group " + group + " and its subgroups"));
+        }
+        return 1;
+    }
+
+    private static boolean isTransferRunning(CommandContext<FabricClientCommandSource> context) {
+        if (transfer != null && !transfer.isDone()) {
+            context.getSource().sendError(Text.literal("A waypoint import or export is already running"));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLoading(CommandContext<FabricClientCommandSource> context) {
+        if (!WaypointManager.isReady()) {
+            context.getSource().sendError(Text.literal("Waypoints are still loading"));
+            return true;
+        }
+        return false;
+    }
+
+    // The transfer finishes on its own thread; chat is only touched on the client thread
+    private static void reportWhenDone(WaypointTransfer transfer, String source) {
+        boolean isImport = transfer.getKind() == WaypointTransfer.Kind.IMPORT;
+        transfer.getResult().whenComplete((count, error) -> {
+            String message;
+            if (error == null) {
+                message = "§a" + (isImport ? "Imported " : "Exported ") + count + " waypoints"
+                        + (transfer.getDuplicates() > 0 ? ", " + transfer.getDuplicates() + " near duplicates" : "")
+                        + (transfer.getSkipped() > 0 ? ", skipped " + transfer.getSkipped() + " invalid" : "");
+            } else if (unwrap(error) instanceof CancellationException) {
+                message = "§e" + (isImport ? "Import" : "Export") + " cancelled after "
+                        + transfer.getTransferred() + " waypoints";
+            } else {
+                message = "§cFailed to transfer " + source + ": " + unwrap(error).getMessage();
+            }
+            MinecraftClient client = MinecraftClient.getInstance();
+            client.execute(() -> {
+                if (client.player != null) {
+                    client.player.sendMessage(Text.literal(message), false);
+                }
+            });
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
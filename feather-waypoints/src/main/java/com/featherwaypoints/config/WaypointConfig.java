@@ -0,0 +1,188 @@
+package com.featherwaypoints.config;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+import com.featherwaypoints.storage.DuplicatePolicy;
+import com.featherwaypoints.storage.PersistenceMode;
+import com.featherwaypoints.storage.StorageBackend;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class WaypointConfig {
+    private static final Gson GSON = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    @SerializedName("persistence_mode")
+    private PersistenceMode persistenceMode = PersistenceMode.JOURNAL;
+
+    @SerializedName("storage_backend")
+    private StorageBackend storageBackend = StorageBackend.HEAP;
+
+    @SerializedName("search_typo_tolerance")
+    private boolean searchTypoTolerance = true;
+
+    // Marker detail tiers, in blocks from the camera
+    @SerializedName("label_distance")
+    private int labelDistance = 128;
+
+    @SerializedName("marker_distance")
+    private int markerDistance = 512;
+
+    @SerializedName("max_render_distance")
+    private int maxRenderDistance = 1000;
+
+    // Markers closer together on screen than this many GUI pixels are merged
+    @SerializedName("cluster_radius")
+    private int clusterRadius = 24;
+
+    @SerializedName("gpu_marker_meshes")
+    private boolean gpuMarkerMeshes = false;
+
+    @SerializedName("performance_overlay")
+    private boolean performanceOverlay = false;
+
+    // Near-duplicate handling for imports
+    @SerializedName("import_duplicates")
+    private DuplicatePolicy importDuplicates = DuplicatePolicy.KEEP;
+
+    @SerializedName("import_duplicate_radius")
+    private double importDuplicateRadius = 4.0;
+
+    @SerializedName("import_duplicate_match_names")
+    private boolean importDuplicateMatchNames = false;
+
+    // Name, icon and colour for new waypoints, by dimension id. Mainly for
+    // modded dimensions, which otherwise get ones derived from their id.
+    @SerializedName("dimensions")
+    private Map<String, DimensionEntry> dimensions = new LinkedHashMap<>();
+
+    public static class DimensionEntry {
+        @SerializedName("name")
+        private String name;
+
+        @SerializedName("icon")
+        private String icon;
+
+        // "#RRGGBB"
+        @SerializedName("color")
+        private String color;
+    }
+
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode != null ? persistenceMode : PersistenceMode.JOURNAL;
+    }
+
+    public StorageBackend getStorageBackend() {
+        return storageBackend != null ? storageBackend : StorageBackend.HEAP;
+    }
+
+    public boolean isSearchTypoTolerance() {
+        return searchTypoTolerance;
+    }
+
+    public int getClusterRadius() {
+        return Math.max(0, clusterRadius);
+    }
+
+    public boolean isGpuMarkerMeshes() {
+        return gpuMarkerMeshes;
+    }
+
+    public boolean isPerformanceOverlay() {
+        return performanceOverlay;
+    }
+
+    public void setPerformanceOverlay(boolean performanceOverlay) {
+        this.performanceOverlay = performanceOverlay;
+    }
+
+    public DuplicatePolicy getImportDuplicates() {
+        return importDuplicates != null ? importDuplicates : DuplicatePolicy.KEEP;
+    }
+
+    public double getImportDuplicateRadius() {
+        return Math.max(0, importDuplicateRadius);
+    }
+
+    public boolean isImportDuplicateMatchNames() {
+        return importDuplicateMatchNames;
+    }
+
+    // Entries with an unreadable colour keep the rest of their settings
+    public Map<String, WaypointDimension.Defaults> getDimensionDefaults() {
+        Map<String, WaypointDimension.Defaults> defaults = new HashMap<>();
+        if (dimensions == null) {
+            return defaults;
+        }
+        for (Map.Entry<String, DimensionEntry> entry : dimensions.entrySet()) {
+            DimensionEntry dimension = entry.getValue();
+            if (entry.getKey() == null || dimension == null) {
+                continue;
+            }
+            Integer color = null;
+            if (dimension.color != null) {
+                try {
+                    color = Waypoint.colorFromHex(dimension.color.trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid colour for dimension " + entry.getKey() + ": " + dimension.color);
+                }
+            }
+            defaults.put(entry.getKey(), new WaypointDimension.Defaults(dimension.name, dimension.icon, color));
+        }
+        return defaults;
+    }
+
+    public int getMaxRenderDistance() {
+        return Math.max(0, maxRenderDistance);
+    }
+
+    // Tiers never reach past the render distance or the tier after them
+    public int getMarkerDistance() {
+        return Math.max(0, Math.min(markerDistance, getMaxRenderDistance()));
+    }
+
+    public int getLabelDistance() {
+        return Math.max(0, Math.min(labelDistance, getMarkerDistance()));
+    }
+
+    // Reads the config, writing out the defaults if the file does not exist yet
+    // so players have something to edit.
+    public static WaypointConfig load(Path file) {
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                WaypointConfig config = GSON.fromJson(reader, WaypointConfig.class);
+                if (config != null) {
+                    return config;
+                }
+            } catch (IOException | JsonParseException e) {
+                System.err.println("Failed to load waypoint config, using defaults: " + e.getMessage());
+                return new WaypointConfig();
+            }
+        }
+
+        WaypointConfig config = new WaypointConfig();
+        config.save(file);
+        return config;
+    }
+
+    public void save(Path file) {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        } catch (IOException e) {
+            System.err.println("Failed to save waypoint config: " + e.getMessage());
+        }
+    }
+}
@@ -39,6 +39,10 @@ public class Waypoint {
     @SerializedName("created_at")
     private long createdAt;
 
+    // Light beam from the bottom to the top of the world
+    @SerializedName("beam")
+    private boolean beam;
+
     // Constructor for creating new waypoints
     public Waypoint(String name, double x, double y, double z, String dimension, int color, String icon, String group) {
         this.id = UUID.randomUUID().toString();
@@ -82,6 +86,7 @@ public class Waypoint {
     public String getGroup() { return group; }
     public boolean isVisible() { return visible; }
     public long getCreatedAt() { return createdAt; }
+    public boolean hasBeam() { return beam; }
 
     // Setters
     public void setName(String name) { this.name = name; }
@@ -93,8 +98,15 @@ public class Waypoint {
     public void setIcon(String icon) { this.icon = icon; }
     public void setGroup(String group) { this.group = group; }
     public void setVisible(boolean visible) { this.visible = visible; }
+    public void setBeam(boolean beam) { this.beam = beam; }
 
     // Utility methods
+    public Waypoint copy() {
+        Waypoint copy = new Waypoint(id, name, x, y, z, dimension, color, icon, group, visible, createdAt);
+        copy.beam = beam;
+        return copy;
+    }
+
     public double getDistanceTo(double x, double y, double z) {
         return Math.sqrt(Math.pow(this.x - x, 2) + Math.pow(this.y - y, 2) + Math.pow(this.z - z, 2));
     }
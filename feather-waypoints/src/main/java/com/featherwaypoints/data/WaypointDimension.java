@@ -1,58 +1,179 @@
 package com.featherwaypoints.data;
 
-public enum WaypointDimension {
-    OVERWORLD("minecraft:overworld", "Overworld", "grass_block.png", 0x4CAF50),
-    NETHER("minecraft:the_nether", "Nether", "netherrack.png", 0xF44336),
-    END("minecraft:the_end", "End", "end_stone.png", 0x9C27B0);
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registry of the dimensions waypoints have been seen in. Each id is interned
+// when a stored waypoint or the world being played first brings it up and
+// gets a small handle that never changes, so code that filters by dimension
+// can compare ints instead of strings. The three vanilla dimensions are
+// always there with handles 0 to 2; modded ones get a name, icon and colour
+// derived from their id unless the config says otherwise. Lookups are
+// lock-free and never register anything; registering a new id takes a lock.
+public final class WaypointDimension {
+    // Fallback colours for dimensions with no configured colour, picked by id
+    private static final int[] PALETTE = {
+            0x2196F3, 0xFF9800, 0x009688, 0xE91E63, 0x795548, 0x3F51B5, 0xCDDC39, 0x607D8B
+    };
+
+    private static final Map<String, WaypointDimension> BY_ID = new ConcurrentHashMap<>();
+    private static volatile WaypointDimension[] byHandle = new WaypointDimension[0];
+    // Per-dimension overrides from the config, by id
+    private static volatile Map<String, Defaults> configured = Map.of();
+
+    public static final WaypointDimension OVERWORLD =
+            register("minecraft:overworld", new Defaults("Overworld", "grass_block.png", 0x4CAF50));
+    public static final WaypointDimension NETHER =
+            register("minecraft:the_nether", new Defaults("Nether", "netherrack.png", 0xF44336));
+    public static final WaypointDimension END =
+            register("minecraft:the_end", new Defaults("End", "end_stone.png", 0x9C27B0));
+
+    // What a dimension's waypoints get when nothing else is chosen. Any of the
+    // fields may be null in a config override, keeping the built-in value.
+    public static final class Defaults {
+        private final String displayName;
+        private final String icon;
+        private final Integer color;
+
+        public Defaults(String displayName, String icon, Integer color) {
+            this.displayName = displayName;
+            this.icon = icon;
+            this.color = color;
+        }
+    }
 
     private final String id;
-    private final String displayName;
-    private final String defaultIcon;
-    private final int defaultColor;
+    private final int handle;
+    private final Defaults builtIn;
+    private volatile Defaults defaults;
 
-    WaypointDimension(String id, String displayName, String defaultIcon, int defaultColor) {
+    private WaypointDimension(String id, int handle, Defaults builtIn) {
         this.id = id;
-        this.displayName = displayName;
-        this.defaultIcon = defaultIcon;
-        this.defaultColor = defaultColor;
+        this.handle = handle;
+        this.builtIn = builtIn;
+        this.defaults = builtIn;
     }
 
     public String getId() {
         return id;
     }
 
+    // Small and dense, in the order dimensions were first seen
+    public int getHandle() {
+        return handle;
+    }
+
     public String getDisplayName() {
-        return displayName;
+        return defaults.displayName;
     }
 
     public String getDefaultIcon() {
-        return defaultIcon;
+        return defaults.icon;
     }
 
     public int getDefaultColor() {
-        return defaultColor;
+        return defaults.color;
     }
 
+    // The dimension with the given id, or null if it was never registered, so
+    // queries for made-up ids stay cheap and leave nothing behind. A null id
+    // falls back to the overworld.
     public static WaypointDimension fromId(String id) {
-        for (WaypointDimension dimension : values()) {
-            if (dimension.id.equals(id)) {
-                return dimension;
-            }
+        return id == null ? OVERWORLD : BY_ID.get(id);
+    }
+
+    // The dimension with the given id, registering it if it is new. Only for
+    // dimensions that exist: those of stored waypoints and of the world being
+    // played. A null id falls back to the overworld.
+    public static WaypointDimension register(String id) {
+        if (id == null) {
+            return OVERWORLD;
         }
-        return OVERWORLD; // Default fallback
+        WaypointDimension dimension = BY_ID.get(id);
+        return dimension != null ? dimension : register(id, derivedDefaults(id));
+    }
+
+    // The dimension with the given handle, or null if no such handle was given out
+    public static WaypointDimension fromHandle(int handle) {
+        WaypointDimension[] dimensions = byHandle;
+        return handle >= 0 && handle < dimensions.length ? dimensions[handle] : null;
     }
 
     public static WaypointDimension fromDisplayName(String displayName) {
-        for (WaypointDimension dimension : values()) {
-            if (dimension.displayName.equals(displayName)) {
+        for (WaypointDimension dimension : byHandle) {
+            if (dimension.getDisplayName().equals(displayName)) {
                 return dimension;
             }
         }
         return OVERWORLD; // Default fallback
     }
 
+    // Number of dimensions registered so far; handles are below this
+    public static int count() {
+        return byHandle.length;
+    }
+
+    // Applies the per-dimension overrides from the config, replacing any set
+    // before. Dimensions not listed go back to their built-in defaults.
+    public static synchronized void configure(Map<String, Defaults> overrides) {
+        configured = Map.copyOf(overrides);
+        for (WaypointDimension dimension : byHandle) {
+            dimension.defaults = merge(dimension.builtIn, configured.get(dimension.id));
+        }
+    }
+
+    private static synchronized WaypointDimension register(String id, Defaults builtIn) {
+        WaypointDimension dimension = BY_ID.get(id);
+        if (dimension != null) {
+            return dimension;
+        }
+        WaypointDimension[] dimensions = byHandle;
+        dimension = new WaypointDimension(id, dimensions.length, builtIn);
+        dimension.defaults = merge(builtIn, configured.get(id));
+        WaypointDimension[] grown = Arrays.copyOf(dimensions, dimensions.length + 1);
+        grown[dimension.handle] = dimension;
+        byHandle = grown;
+        BY_ID.put(id, dimension);
+        return dimension;
+    }
+
+    private static Defaults merge(Defaults builtIn, Defaults override) {
+        if (override == null) {
+            return builtIn;
+        }
+        return new Defaults(override.displayName != null ? override.displayName : builtIn.displayName,
+                override.icon != null ? override.icon : builtIn.icon,
+                override.color != null ? override.color : builtIn.color);
+    }
+
+    // "twilightforest:twilight_forest" is shown as "Twilight Forest"
+    private static Defaults derivedDefaults(String id) {
+        String path = id.substring(id.indexOf(':') + 1);
+        StringBuilder name = new StringBuilder(path.length());
+        boolean wordStart = true;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '_' || c == '/' || c == '-' || c == '.') {
+                if (name.length() > 0 && name.charAt(name.length() - 1) != ' ') {
+                    name.append(' ');
+                }
+                wordStart = true;
+            } else {
+                name.append(wordStart ? Character.toUpperCase(c) : c);
+                wordStart = false;
+            }
+        }
+        String displayName = name.toString().trim();
+        if (displayName.isEmpty()) {
+            displayName = id;
+        }
+        int color = PALETTE[Math.floorMod(id.hashCode(), PALETTE.length)];
+        return new Defaults(displayName, OVERWORLD.builtIn.icon, color);
+    }
+
     @Override
     public String toString() {
-        return displayName;
+        return getDisplayName();
     }
 }
@@ -0,0 +1,53 @@
+package com.featherwaypoints.gui;
+
+import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.render.WaypointRenderer;
+import com.featherwaypoints.stats.PerformanceReport;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+
+import java.util.List;
+
+// Optional HUD panel with the waypoint subsystem's numbers, switched with
+// performance_overlay in the config or /atpoint overlay. Returns straight
+// away when off; when on, the text is rebuilt a few times a second rather
+// than every frame so it stays readable.
+public final class PerformanceOverlay {
+    private static final long REFRESH_MILLIS = 250;
+    private static final int MARGIN = 4;
+    private static final int LINE_HEIGHT = 10;
+
+    private static List<String> lines;
+    private static int width;
+    private static long refreshedAt;
+
+    private PerformanceOverlay() {
+    }
+
+    public static void render(DrawContext context) {
+        WaypointManager manager = WaypointManager.getInstance();
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (!manager.getConfig().isPerformanceOverlay() || client.options.debugEnabled) {
+            lines = null;
+            return;
+        }
+
+        TextRenderer textRenderer = client.textRenderer;
+        long now = System.currentTimeMillis();
+        if (lines == null || now - refreshedAt >= REFRESH_MILLIS) {
+            lines = PerformanceReport.lines(manager, WaypointRenderer.getFrameStats(),
+                    WaypointRenderer.getRenderLatency());
+            width = 0;
+            for (String line : lines) {
+                width = Math.max(width, textRenderer.getWidth(line));
+            }
+            refreshedAt = now;
+        }
+
+        context.fill(MARGIN - 2, MARGIN - 2, MARGIN + width + 2, MARGIN + lines.size() * LINE_HEIGHT, 0x90000000);
+        for (int i = 0; i < lines.size(); i++) {
+            context.drawTextWithShadow(textRenderer, lines.get(i), MARGIN, MARGIN + i * LINE_HEIGHT, 0xFFFFFF);
+        }
+    }
+}
@@ -28,6 +28,7 @@ public class WaypointEditScreen extends Screen {
     private TextFieldWidget groupField;
     
     private boolean isEditing;
+    private boolean beam;
 
     public WaypointEditScreen(Waypoint waypoint, String defaultDimension, WaypointListScreen parent) {
         super(Text.literal(waypoint == null ? "Add Waypoint" : "Edit Waypoint"));
@@ -36,6 +37,7 @@ public class WaypointEditScreen extends Screen {
         this.defaultDimension = defaultDimension;
         this.parentScreen = parent;
         this.isEditing = waypoint != null;
+        this.beam = waypoint != null && waypoint.hasBeam();
     }
 
     @Override
@@ -85,7 +87,7 @@ public class WaypointEditScreen extends Screen {
         if (isEditing) {
             this.colorField.setText(editingWaypoint.getColorAsHex());
         } else {
-            WaypointDimension dim = WaypointDimension.fromId(defaultDimension);
+            WaypointDimension dim = WaypointDimension.register(defaultDimension);
             this.colorField.setText(String.format("#%06X", dim.getDefaultColor()));
         }
         this.addSelectableChild(this.colorField);
@@ -100,6 +102,12 @@ public class WaypointEditScreen extends Screen {
         }
         this.addSelectableChild(this.groupField);
 
+        // Beam toggle, next to the group field
+        this.addDrawableChild(ButtonWidget.builder(beamLabel(), button -> {
+            beam = !beam;
+            button.setMessage(beamLabel());
+        }).dimensions(centerX + FIELD_WIDTH / 2 + 10, startY, 60, BUTTON_HEIGHT).build());
+
         // Buttons
         startY += fieldSpacing + 20;
         
@@ -127,7 +135,11 @@ public class WaypointEditScreen extends Screen {
         // Delete button (only for editing)
         if (isEditing) {
             this.addDrawableChild(ButtonWidget.builder(Text.literal("Delete"), button -> {
-                waypointManager.removeWaypoint(editingWaypoint);
+                if (parentScreen != null) {
+                    parentScreen.deleteWaypoint(editingWaypoint);
+                } else {
+                    waypointManager.removeWaypoint(editingWaypoint);
+                }
                 this.close();
             }).dimensions(centerX - 120, startY, BUTTON_WIDTH, BUTTON_HEIGHT).build());
         }
@@ -151,7 +163,7 @@ public class WaypointEditScreen extends Screen {
             try {
                 color = Waypoint.colorFromHex(colorText);
             } catch (NumberFormatException e) {
-                WaypointDimension dim = WaypointDimension.fromId(defaultDimension);
+                WaypointDimension dim = WaypointDimension.register(defaultDimension);
                 color = dim.getDefaultColor();
             }
 
@@ -168,12 +180,14 @@ public class WaypointEditScreen extends Screen {
                 editingWaypoint.setZ(z);
                 editingWaypoint.setColor(color);
                 editingWaypoint.setGroup(group);
-                waypointManager.updateWaypoint(editingWaypoint);
+                editingWaypoint.setBeam(beam);
+                save(editingWaypoint, false);
             } else {
                 // Create new waypoint
-                WaypointDimension dim = WaypointDimension.fromId(defaultDimension);
+                WaypointDimension dim = WaypointDimension.register(defaultDimension);
                 Waypoint newWaypoint = new Waypoint(name, x, y, z, defaultDimension, color, dim.getDefaultIcon(), group);
-                waypointManager.addWaypoint(newWaypoint);
+                newWaypoint.setBeam(beam);
+                save(newWaypoint, true);
             }
 
             this.close();
@@ -182,6 +196,21 @@ public class WaypointEditScreen extends Screen {
         }
     }
 
+    // Through the list, when there is one, so it can patch its rows
+    private void save(Waypoint waypoint, boolean isNew) {
+        if (parentScreen != null) {
+            parentScreen.saveWaypoint(waypoint, isNew);
+        } else if (isNew) {
+            waypointManager.addWaypoint(waypoint);
+        } else {
+            waypointManager.updateWaypoint(waypoint);
+        }
+    }
+
+    private Text beamLabel() {
+        return Text.literal(beam ? "Beam: On" : "Beam: Off");
+    }
+
     @Override
     public void render(DrawContext context, int mouseX, int mouseY, float delta) {
         this.renderBackground(context);
@@ -0,0 +1,332 @@
+package com.featherwaypoints.gui;
+
+import com.featherwaypoints.data.Waypoint;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Rows behind WaypointListScreen. Rows are only made for the entries that
+// are drawn; each formats its coordinates once and its distance only when the
+// rounded value changes, so drawing allocates nothing on most frames however
+// long the list is.
+//
+// In DISTANCE order the rows are kept sorted by their distance from the point
+// the player was at when they were last sorted. Moving less than
+// RESORT_DISTANCE from there changes nothing; past it every distance is
+// refreshed and the rows sorted again. Coordinates and sort keys sit in
+// primitive columns by slot and the order is sorted as packed longs, so a
+// resort never touches the waypoint objects, and the primitive sort takes
+// advantage of the rows already being nearly in order. Edits are patched
+// into place rather than sorting or refetching the whole list. Client
+// thread only.
+public class WaypointListModel {
+    public enum Order {
+        DEFAULT,
+        DISTANCE
+    }
+
+    static final double RESORT_DISTANCE = 8.0;
+    private static final int INITIAL_SLOTS = 64;
+
+    public static final class Row {
+        private final Waypoint waypoint;
+        private String coordinates;
+        private long labelMeters = -1;
+        private String distanceLabel;
+
+        Row(Waypoint waypoint) {
+            this.waypoint = waypoint;
+        }
+
+        public Waypoint getWaypoint() {
+            return waypoint;
+        }
+
+        public String getCoordinates() {
+            if (coordinates == null) {
+                coordinates = String.format("%.0f, %.0f, %.0f", waypoint.getX(), waypoint.getY(), waypoint.getZ());
+            }
+            return coordinates;
+        }
+
+        // Distance from the given position, rounded to whole meters
+        public String getDistanceLabel(double x, double y, double z) {
+            long meters = Math.round(waypoint.getDistanceTo(x, y, z));
+            if (meters != labelMeters) {
+                labelMeters = meters;
+                distanceLabel = meters + "m";
+            }
+            return distanceLabel;
+        }
+    }
+
+    // By slot; slots freed by removal are reused. Rows are made on first get
+    private Waypoint[] waypoints = new Waypoint[INITIAL_SLOTS];
+    private Row[] rows = new Row[INITIAL_SLOTS];
+    private double[] x = new double[INITIAL_SLOTS];
+    private double[] y = new double[INITIAL_SLOTS];
+    private double[] z = new double[INITIAL_SLOTS];
+    // Squared distance from the origin as of the last sort
+    private float[] keys = new float[INITIAL_SLOTS];
+    private int slotCount;
+    private final IntArrayList freeSlots = new IntArrayList();
+    // Only built once an edit needs it, since a new search result may never be edited
+    private final Object2IntOpenHashMap<String> slotById = new Object2IntOpenHashMap<>();
+    private boolean idsIndexed;
+
+    // Slots in display order
+    private int[] order = new int[INITIAL_SLOTS];
+    private int size;
+    private long[] packed = new long[0];
+
+    private Order sortOrder = Order.DEFAULT;
+    private boolean hasOrigin;
+    private double originX;
+    private double originY;
+    private double originZ;
+
+    public WaypointListModel() {
+        slotById.defaultReturnValue(-1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Row get(int index) {
+        int slot = order[index];
+        Row row = rows[slot];
+        if (row == null) {
+            row = new Row(waypoints[slot]);
+            rows[slot] = row;
+        }
+        return row;
+    }
+
+    public Order getOrder() {
+        return sortOrder;
+    }
+
+    public void setOrder(Order sortOrder) {
+        if (this.sortOrder == sortOrder) {
+            return;
+        }
+        this.sortOrder = sortOrder;
+        if (isSorted()) {
+            refreshKeys();
+            sort();
+        }
+    }
+
+    // Replaces every row, keeping the given order unless sorting by distance
+    public void setWaypoints(List<Waypoint> waypoints) {
+        clear();
+        for (Waypoint waypoint : waypoints) {
+            append(store(newSlot(), waypoint));
+        }
+        if (isSorted()) {
+            refreshKeys();
+            sort();
+        }
+    }
+
+    // Called every frame with the player's position; returns whether the
+    // rows were resorted
+    public boolean moveTo(double x, double y, double z) {
+        if (hasOrigin) {
+            double dx = x - originX;
+            double dy = y - originY;
+            double dz = z - originZ;
+            if (dx * dx + dy * dy + dz * dz < RESORT_DISTANCE * RESORT_DISTANCE) {
+                return false;
+            }
+        }
+        hasOrigin = true;
+        originX = x;
+        originY = y;
+        originZ = z;
+        if (sortOrder != Order.DISTANCE) {
+            return false;
+        }
+        refreshKeys();
+        sort();
+        return true;
+    }
+
+    // Adds the waypoint or replaces the row with its id, moving it to where
+    // it now belongs. New rows go at the end in DEFAULT order.
+    public void put(Waypoint waypoint) {
+        int slot = ids().getInt(waypoint.getId());
+        boolean sorted = isSorted();
+        if (slot >= 0) {
+            if (sorted) {
+                removeAt(positionOf(slot));
+            }
+            store(slot, waypoint);
+            if (!sorted) {
+                return;
+            }
+        } else {
+            slot = store(newSlot(), waypoint);
+            slotById.put(waypoint.getId(), slot);
+            if (!sorted) {
+                append(slot);
+                return;
+            }
+        }
+        keys[slot] = key(slot);
+        insertAt(insertionPoint(keys[slot]), slot);
+    }
+
+    public boolean remove(String id) {
+        int slot = ids().getInt(id);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(positionOf(slot));
+        slotById.removeInt(id);
+        waypoints[slot] = null;
+        rows[slot] = null;
+        freeSlots.add(slot);
+        return true;
+    }
+
+    public boolean contains(String id) {
+        return ids().containsKey(id);
+    }
+
+    public void clear() {
+        Arrays.fill(waypoints, 0, slotCount, null);
+        Arrays.fill(rows, 0, slotCount, null);
+        slotCount = 0;
+        freeSlots.clear();
+        slotById.clear();
+        idsIndexed = false;
+        size = 0;
+    }
+
+    // A waypoint listed twice keeps the later slot; the earlier row stays
+    // listed but is no longer patched
+    private Object2IntOpenHashMap<String> ids() {
+        if (!idsIndexed) {
+            for (int i = 0; i < size; i++) {
+                slotById.put(waypoints[order[i]].getId(), order[i]);
+            }
+            idsIndexed = true;
+        }
+        return slotById;
+    }
+
+    private boolean isSorted() {
+        return sortOrder == Order.DISTANCE && hasOrigin;
+    }
+
+    private int newSlot() {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.removeInt(freeSlots.size() - 1);
+        } else {
+            if (slotCount == rows.length) {
+                int capacity = slotCount * 2;
+                waypoints = Arrays.copyOf(waypoints, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+            }
+            slot = slotCount++;
+        }
+        return slot;
+    }
+
+    private int store(int slot, Waypoint waypoint) {
+        waypoints[slot] = waypoint;
+        rows[slot] = null;
+        x[slot] = waypoint.getX();
+        y[slot] = waypoint.getY();
+        z[slot] = waypoint.getZ();
+        return slot;
+    }
+
+    private void append(int slot) {
+        insertAt(size, slot);
+    }
+
+    private void insertAt(int position, int slot) {
+        if (size == order.length) {
+            order = Arrays.copyOf(order, size * 2);
+        }
+        System.arraycopy(order, position, order, position + 1, size - position);
+        order[position] = slot;
+        size++;
+    }
+
+    private void removeAt(int position) {
+        System.arraycopy(order, position + 1, order, position, size - position - 1);
+        size--;
+    }
+
+    private float key(int slot) {
+        double dx = x[slot] - originX;
+        double dy = y[slot] - originY;
+        double dz = z[slot] - originZ;
+        return (float) (dx * dx + dy * dy + dz * dz);
+    }
+
+    // By slot rather than display order, so the columns are read front to back
+    private void refreshKeys() {
+        for (int slot = 0; slot < slotCount; slot++) {
+            keys[slot] = key(slot);
+        }
+    }
+
+    // Sorts the order by key. Keys are non-negative, so their float bits sort
+    // like the floats themselves and the slot can ride in the low half.
+    private void sort() {
+        if (packed.length < size) {
+            packed = new long[order.length];
+        }
+        for (int i = 0; i < size; i++) {
+            packed[i] = (long) Float.floatToIntBits(keys[order[i]]) << 32 | order[i];
+        }
+        Arrays.sort(packed, 0, size);
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) packed[i];
+        }
+    }
+
+    // Index of the first row with a larger key, so equal rows keep their order
+    private int insertionPoint(float key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[order[mid]] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Sorted rows are found by key; DEFAULT order falls back to a scan
+    private int positionOf(int slot) {
+        if (isSorted()) {
+            for (int i = insertionPoint(keys[slot]) - 1; i >= 0 && keys[order[i]] == keys[slot]; i--) {
+                if (order[i] == slot) {
+                    return i;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (order[i] == slot) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Slot " + slot + " is not listed");
+    }
+}
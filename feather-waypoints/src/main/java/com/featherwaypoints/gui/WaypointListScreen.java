@@ -2,6 +2,7 @@ package com.featherwaypoints.gui;
 
 import com.featherwaypoints.data.Waypoint;
 import com.featherwaypoints.data.WaypointDimension;
+import com.featherwaypoints.index.SearchIndex;
 import com.featherwaypoints.manager.WaypointManager;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
@@ -10,24 +11,39 @@ import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
-import java.util.List;
-
+// Lists the waypoints of one dimension, optionally sorted by distance. Rows
+// come from a WaypointListModel; edits made through this screen patch it
+// directly, and anything else that changes the dimension, such as an import
+// finishing, is picked up from the manager's version and refetched.
 public class WaypointListScreen extends Screen {
     private static final int ENTRY_HEIGHT = 20;
     private static final int MARGIN = 10;
     private static final int BUTTON_WIDTH = 80;
     private static final int BUTTON_HEIGHT = 20;
-
-    private final WaypointManager waypointManager;
+    // Kept across screens, so the list opens the way it was left
+    private static WaypointListModel.Order order = WaypointListModel.Order.DEFAULT;
+
+    // The empty stand-in until the world's waypoints have loaded
+    private WaypointManager waypointManager;
+    private boolean loaded;
+    private ButtonWidget addButton;
+    private ButtonWidget clearButton;
     private TextFieldWidget searchField;
-    private List<Waypoint> displayedWaypoints;
+    private final WaypointListModel rows = new WaypointListModel();
+    // Manager version the rows were last brought up to date with
+    private long rowsVersion;
+    private String query = "";
     private int scrollOffset = 0;
     private String currentDimension;
+    private final WaypointDimension dimension;
 
     public WaypointListScreen(String dimension) {
         super(Text.literal("Waypoints"));
         this.waypointManager = WaypointManager.getInstance();
+        this.loaded = WaypointManager.isReady();
         this.currentDimension = dimension;
+        this.dimension = WaypointDimension.register(dimension);
+        this.rows.setOrder(order);
         updateDisplayedWaypoints();
     }
 
@@ -40,15 +56,30 @@ public class WaypointListScreen extends Screen {
         this.addSelectableChild(this.searchField);
 
         // Add waypoint button
-        this.addDrawableChild(ButtonWidget.builder(Text.literal("Add"), button -> {
+        this.addButton = this.addDrawableChild(ButtonWidget.builder(Text.literal("Add"), button -> {
             this.client.setScreen(new WaypointEditScreen(null, this.currentDimension, this));
         }).dimensions(this.width - 200, 30, BUTTON_WIDTH, BUTTON_HEIGHT).build());
 
         // Clear all button
-        this.addDrawableChild(ButtonWidget.builder(Text.literal("Clear All"), button -> {
+        this.clearButton = this.addDrawableChild(ButtonWidget.builder(Text.literal("Clear All"), button -> {
             waypointManager.clearAllWaypoints();
             updateDisplayedWaypoints();
         }).dimensions(this.width - 110, 30, BUTTON_WIDTH, BUTTON_HEIGHT).build());
+        this.addButton.active = loaded;
+        this.clearButton.active = loaded;
+
+        // Sort order button
+        this.addDrawableChild(ButtonWidget.builder(sortLabel(), button -> {
+            order = order == WaypointListModel.Order.DEFAULT
+                    ? WaypointListModel.Order.DISTANCE : WaypointListModel.Order.DEFAULT;
+            if (order == WaypointListModel.Order.DEFAULT) {
+                // Back to the manager's order
+                updateDisplayedWaypoints();
+            }
+            rows.setOrder(order);
+            button.setMessage(sortLabel());
+            this.scrollOffset = 0;
+        }).dimensions(MARGIN, 30, BUTTON_WIDTH, BUTTON_HEIGHT).build());
 
         // Done button
         this.addDrawableChild(ButtonWidget.builder(Text.literal("Done"), button -> {
@@ -57,32 +88,96 @@ public class WaypointListScreen extends Screen {
     }
 
     private void onSearchChanged(String query) {
+        this.query = query;
+        updateDisplayedWaypoints();
+        this.scrollOffset = 0;
+    }
+
+    // Refetches every row; only for a new query or a change made elsewhere
+    private void updateDisplayedWaypoints() {
+        this.rowsVersion = waypointManager.getVersion(dimension);
         if (query.isEmpty()) {
-            this.displayedWaypoints = waypointManager.getWaypointsInDimension(currentDimension);
+            rows.setWaypoints(waypointManager.getSnapshot(dimension).getWaypoints());
         } else {
-            this.displayedWaypoints = waypointManager.searchWaypointsInDimension(query, currentDimension);
+            rows.setWaypoints(waypointManager.searchWaypointsInDimension(query, currentDimension));
         }
-        this.scrollOffset = 0;
     }
 
-    private void updateDisplayedWaypoints() {
-        this.displayedWaypoints = waypointManager.getWaypointsInDimension(currentDimension);
+    // Used by WaypointEditScreen, so the saved row is patched in place
+    // instead of the whole list being fetched again
+    public void saveWaypoint(Waypoint waypoint, boolean isNew) {
+        boolean current = waypointManager.getVersion(dimension) == rowsVersion;
+        if (isNew) {
+            waypointManager.addWaypoint(waypoint);
+        } else {
+            waypointManager.updateWaypoint(waypoint);
+        }
+        if (!current) {
+            updateDisplayedWaypoints();
+            return;
+        }
+        // The manager keeps the saved object, so the row gets its own copy
+        Waypoint row = waypoint.copy();
+        if (!dimension.getId().equals(row.getDimension())) {
+            rows.remove(row.getId());
+        } else if (query.isEmpty() || rows.contains(row.getId())
+                || SearchIndex.rank(SearchIndex.normalize(query), row) >= 0) {
+            rows.put(row);
+        }
+        this.rowsVersion = waypointManager.getVersion(dimension);
+    }
+
+    public void deleteWaypoint(Waypoint waypoint) {
+        boolean current = waypointManager.getVersion(dimension) == rowsVersion;
+        waypointManager.removeWaypoint(waypoint);
+        if (!current) {
+            updateDisplayedWaypoints();
+            return;
+        }
+        rows.remove(waypoint.getId());
+        this.rowsVersion = waypointManager.getVersion(dimension);
+    }
+
+    private Text sortLabel() {
+        return Text.literal(order == WaypointListModel.Order.DISTANCE ? "Sort: Nearest" : "Sort: Default");
+    }
+
+    // Swaps the stand-in for the real manager once loading finishes
+    private void checkLoaded() {
+        if (loaded || !WaypointManager.isReady()) {
+            return;
+        }
+        this.waypointManager = WaypointManager.getInstance();
+        this.loaded = true;
+        this.addButton.active = true;
+        this.clearButton.active = true;
+        onSearchChanged(this.searchField.getText());
     }
 
     @Override
     public void render(DrawContext context, int mouseX, int mouseY, float delta) {
+        checkLoaded();
+        if (loaded && waypointManager.getVersion(dimension) != rowsVersion) {
+            updateDisplayedWaypoints();
+        }
+        if (client != null && client.player != null) {
+            rows.moveTo(client.player.getX(), client.player.getY(), client.player.getZ());
+        }
         this.renderBackground(context);
         
         // Title
-        WaypointDimension dim = WaypointDimension.fromId(currentDimension);
-        String title = dim.getDisplayName() + " Waypoints (" + displayedWaypoints.size() + ")";
+        String title = dimension.getDisplayName() + " Waypoints (" + rows.size() + ")";
         context.drawCenteredTextWithShadow(this.textRenderer, title, this.width / 2, 10, 0xFFFFFF);
 
         // Search field
         this.searchField.render(context, mouseX, mouseY, delta);
 
         // Waypoint list
-        renderWaypointList(context, mouseX, mouseY);
+        if (loaded) {
+            renderWaypointList(context, mouseX, mouseY);
+        } else {
+            context.drawCenteredTextWithShadow(this.textRenderer, "Loading waypoints...", this.width / 2, 70, 0xAAAAAA);
+        }
 
         super.render(context, mouseX, mouseY, delta);
     }
@@ -94,19 +189,20 @@ public class WaypointListScreen extends Screen {
         int maxEntries = listHeight / ENTRY_HEIGHT;
 
         // Scrolling
-        if (displayedWaypoints.size() > maxEntries) {
-            int maxScroll = displayedWaypoints.size() - maxEntries;
+        if (rows.size() > maxEntries) {
+            int maxScroll = rows.size() - maxEntries;
             this.scrollOffset = Math.max(0, Math.min(scrollOffset, maxScroll));
         } else {
             this.scrollOffset = 0;
         }
 
-        // Draw waypoint entries
-        for (int i = 0; i < Math.min(maxEntries, displayedWaypoints.size()); i++) {
+        // Draw waypoint entries; only the rows on screen are touched
+        for (int i = 0; i < Math.min(maxEntries, rows.size()); i++) {
             int index = i + scrollOffset;
-            if (index >= displayedWaypoints.size()) break;
+            if (index >= rows.size()) break;
 
-            Waypoint waypoint = displayedWaypoints.get(index);
+            WaypointListModel.Row row = rows.get(index);
+            Waypoint waypoint = row.getWaypoint();
             int y = startY + i * ENTRY_HEIGHT;
             
             // Background
@@ -117,12 +213,11 @@ public class WaypointListScreen extends Screen {
 
             // Waypoint info
             String name = waypoint.getName();
-            String coords = String.format("%.0f, %.0f, %.0f", waypoint.getX(), waypoint.getY(), waypoint.getZ());
+            String coords = row.getCoordinates();
             String distance = "";
             
             if (client != null && client.player != null) {
-                double dist = waypoint.getDistanceTo(client.player.getX(), client.player.getY(), client.player.getZ());
-                distance = String.format("%.0fm", dist);
+                distance = row.getDistanceLabel(client.player.getX(), client.player.getY(), client.player.getZ());
             }
 
             // Color indicator
@@ -146,10 +241,10 @@ public class WaypointListScreen extends Screen {
         }
 
         // Scroll indicator
-        if (displayedWaypoints.size() > maxEntries) {
-            int scrollbarHeight = Math.max(20, (listHeight * maxEntries) / displayedWaypoints.size());
+        if (rows.size() > maxEntries) {
+            int scrollbarHeight = Math.max(20, (listHeight * maxEntries) / rows.size());
             int scrollbarY = startY + (scrollOffset * (listHeight - scrollbarHeight)) / 
-                           (displayedWaypoints.size() - maxEntries);
+                           (rows.size() - maxEntries);
             context.fill(this.width - 8, scrollbarY, this.width - 4, scrollbarY + scrollbarHeight, 0xFFFFFFFF);
         }
     }
@@ -169,19 +264,19 @@ public class WaypointListScreen extends Screen {
         if (mouseX >= MARGIN && mouseX <= this.width - MARGIN && mouseY >= startY && mouseY <= endY) {
             int clickedIndex = ((int) mouseY - startY) / ENTRY_HEIGHT + scrollOffset;
             
-            if (clickedIndex < displayedWaypoints.size()) {
-                Waypoint waypoint = displayedWaypoints.get(clickedIndex);
+            if (clickedIndex < rows.size()) {
+                Waypoint waypoint = rows.get(clickedIndex).getWaypoint();
                 
                 // Check if clicked on edit button area
                 if (mouseX >= this.width - MARGIN - 40) {
-                    this.client.setScreen(new WaypointEditScreen(waypoint, currentDimension, this));
+                    // Edit a copy; the renderer may be reading the shared one
+                    this.client.setScreen(new WaypointEditScreen(waypoint.copy(), currentDimension, this));
                     return true;
                 }
                 
                 // Otherwise, teleport (if creative/cheats enabled)
                 if (button == 1) { // Right click to delete
-                    waypointManager.removeWaypoint(waypoint);
-                    updateDisplayedWaypoints();
+                    deleteWaypoint(waypoint);
                     return true;
                 }
             }
@@ -219,7 +314,10 @@ public class WaypointListScreen extends Screen {
         return super.charTyped(chr, modifiers);
     }
 
+    // Cheap when nothing changed; edits made through saveWaypoint are already in
     public void refreshList() {
-        updateDisplayedWaypoints();
+        if (waypointManager.getVersion(dimension) != rowsVersion) {
+            updateDisplayedWaypoints();
+        }
     }
 }
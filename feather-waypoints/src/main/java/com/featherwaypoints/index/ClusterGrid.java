@@ -0,0 +1,191 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hierarchy of x/z grids over a fixed set of waypoints, each level's cells
+// twice the size of the level below. Every cell knows how many waypoints it
+// holds and their centre, so a far-away cell can be drawn as one aggregate
+// marker without looking at its members. A visit therefore touches a number
+// of cells that depends on what is on screen rather than on how many
+// waypoints there are. Built once per snapshot and never changed.
+public class ClusterGrid {
+    private static final int LEAF_SHIFT = 4;
+    private static final int LEVELS = 8;
+
+    // Decides, top down, which cells to open and receives the result
+    public interface Visitor {
+        // False skips the cell and everything in it
+        boolean enter(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int count);
+
+        // True takes the cell as one cluster instead of opening it
+        boolean collapse(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int count);
+
+        // representative is the first waypoint added to the cell
+        void cluster(Waypoint representative, double x, double y, double z, int count);
+
+        void waypoint(Waypoint waypoint);
+    }
+
+    // Cells are rows of the arrays below rather than objects, which keeps a
+    // grid over many waypoints compact. Children and leaf members are linked
+    // lists threaded through the arrays, in the order they were added.
+    private int cellCount;
+    private byte[] shift = new byte[64];
+    private int[] cellX = new int[64];
+    private int[] cellZ = new int[64];
+    private int[] count = new int[64];
+    private double[] sumX = new double[64];
+    private double[] sumY = new double[64];
+    private double[] sumZ = new double[64];
+    private double[] minY = new double[64];
+    private double[] maxY = new double[64];
+    // Index into waypoints of the first waypoint added to the cell
+    private int[] representative = new int[64];
+    // Leaf cells list waypoints through nextMember, the others cells through nextSibling
+    private int[] first = new int[64];
+    private int[] last = new int[64];
+    private int[] nextSibling = new int[64];
+    private final Waypoint[] waypoints;
+    private final int[] nextMember;
+    private final int[] top;
+
+    public ClusterGrid(Waypoint[] waypoints) {
+        this.waypoints = waypoints;
+        this.nextMember = new int[waypoints.length];
+        List<Map<Long, Integer>> levels = new ArrayList<>(LEVELS);
+        for (int level = 0; level < LEVELS; level++) {
+            levels.add(new HashMap<>());
+        }
+        int[] topCells = new int[16];
+        int topCount = 0;
+        for (int i = 0; i < waypoints.length; i++) {
+            Waypoint waypoint = waypoints[i];
+            double x = waypoint.getX();
+            double y = waypoint.getY();
+            double z = waypoint.getZ();
+            int child = -1;
+            for (int level = 0; level < LEVELS; level++) {
+                int cellShift = LEAF_SHIFT + level;
+                int cx = (int) Math.floor(x) >> cellShift;
+                int cz = (int) Math.floor(z) >> cellShift;
+                Map<Long, Integer> cells = levels.get(level);
+                long key = key(cx, cz);
+                Integer existing = cells.get(key);
+                boolean created = existing == null;
+                int cell;
+                if (created) {
+                    cell = newCell(cellShift, cx, cz, i);
+                    cells.put(key, cell);
+                    if (level == LEVELS - 1) {
+                        if (topCount == topCells.length) {
+                            topCells = Arrays.copyOf(topCells, topCount * 2);
+                        }
+                        topCells[topCount++] = cell;
+                    }
+                } else {
+                    cell = existing;
+                }
+                if (level == 0) {
+                    nextMember[i] = -1;
+                    append(cell, i, nextMember);
+                } else if (child >= 0) {
+                    append(cell, child, nextSibling);
+                }
+                count[cell]++;
+                sumX[cell] += x;
+                sumY[cell] += y;
+                sumZ[cell] += z;
+                minY[cell] = Math.min(minY[cell], y);
+                maxY[cell] = Math.max(maxY[cell], y);
+                // Only a new cell needs linking into its parent
+                child = created ? cell : -1;
+            }
+        }
+        this.top = Arrays.copyOf(topCells, topCount);
+    }
+
+    public void visit(Visitor visitor) {
+        for (int cell : top) {
+            visit(cell, visitor);
+        }
+    }
+
+    private void visit(int cell, Visitor visitor) {
+        int size = 1 << shift[cell];
+        double minX = (double) cellX[cell] * size;
+        double minZ = (double) cellZ[cell] * size;
+        double maxX = minX + size;
+        double maxZ = minZ + size;
+        int n = count[cell];
+        if (!visitor.enter(minX, minY[cell], minZ, maxX, maxY[cell], maxZ, n)) {
+            return;
+        }
+        if (n == 1) {
+            visitor.waypoint(waypoints[representative[cell]]);
+            return;
+        }
+        if (visitor.collapse(minX, minY[cell], minZ, maxX, maxY[cell], maxZ, n)) {
+            visitor.cluster(waypoints[representative[cell]], sumX[cell] / n, sumY[cell] / n, sumZ[cell] / n, n);
+            return;
+        }
+        if (shift[cell] == LEAF_SHIFT) {
+            for (int member = first[cell]; member >= 0; member = nextMember[member]) {
+                visitor.waypoint(waypoints[member]);
+            }
+            return;
+        }
+        for (int child = first[cell]; child >= 0; child = nextSibling[child]) {
+            visit(child, visitor);
+        }
+    }
+
+    private int newCell(int cellShift, int cx, int cz, int waypoint) {
+        if (cellCount == count.length) {
+            int capacity = cellCount * 2;
+            shift = Arrays.copyOf(shift, capacity);
+            cellX = Arrays.copyOf(cellX, capacity);
+            cellZ = Arrays.copyOf(cellZ, capacity);
+            count = Arrays.copyOf(count, capacity);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            sumZ = Arrays.copyOf(sumZ, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            representative = Arrays.copyOf(representative, capacity);
+            first = Arrays.copyOf(first, capacity);
+            last = Arrays.copyOf(last, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+        }
+        int cell = cellCount++;
+        shift[cell] = (byte) cellShift;
+        cellX[cell] = cx;
+        cellZ[cell] = cz;
+        minY[cell] = Double.POSITIVE_INFINITY;
+        maxY[cell] = Double.NEGATIVE_INFINITY;
+        representative[cell] = waypoint;
+        first[cell] = -1;
+        last[cell] = -1;
+        nextSibling[cell] = -1;
+        return cell;
+    }
+
+    // Adds entry to the end of the cell's list, linked through next
+    private void append(int cell, int entry, int[] next) {
+        if (first[cell] < 0) {
+            first[cell] = entry;
+        } else {
+            next[last[cell]] = entry;
+        }
+        last[cell] = entry;
+    }
+
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,364 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Nested waypoint groups, written as paths like "base/farms/iron". Each node
+// keeps its direct members plus a running count and bounding box of its whole
+// subtree, so listing, counting, hiding or giving beams to a subtree never
+// walks the waypoints. Boxes only grow on add; a removal on the edge of a box marks it
+// stale and it is recomputed the next time someone asks for it.
+public class GroupTree {
+    public static final char SEPARATOR = '/';
+
+    // Bounds are NaN when the group has no waypoints
+    public record GroupSummary(String path, int directCount, int totalCount, boolean hidden,
+                               double minX, double minY, double minZ,
+                               double maxX, double maxY, double maxZ) {
+    }
+
+    private static final class Member {
+        final Waypoint waypoint;
+        final double x;
+        final double y;
+        final double z;
+
+        Member(Waypoint waypoint, double x, double y, double z) {
+            this.waypoint = waypoint;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private static final class Node {
+        final String path;
+        final Node parent;
+        final Map<String, Node> children = new TreeMap<>();
+        final Map<String, Member> members = new HashMap<>();
+        int total;
+        boolean hiddenSelf;
+        // Hidden itself or through an ancestor
+        boolean hidden;
+        boolean beamSelf;
+        // Beams on itself or through an ancestor
+        boolean beam;
+        boolean boundsStale;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+
+        Node(String path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+            this.hidden = parent != null && parent.hidden;
+            this.beam = parent != null && parent.beam;
+        }
+
+        void include(double x, double y, double z) {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        void include(Node other) {
+            minX = Math.min(minX, other.minX);
+            minY = Math.min(minY, other.minY);
+            minZ = Math.min(minZ, other.minZ);
+            maxX = Math.max(maxX, other.maxX);
+            maxY = Math.max(maxY, other.maxY);
+            maxZ = Math.max(maxZ, other.maxZ);
+        }
+
+        boolean onEdge(double x, double y, double z) {
+            return x <= minX || y <= minY || z <= minZ || x >= maxX || y >= maxY || z >= maxZ;
+        }
+
+        void resetBounds() {
+            minX = minY = minZ = Double.POSITIVE_INFINITY;
+            maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private final Node root = new Node("", null);
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    // Trims each segment and drops empty ones; null for no group
+    public static String normalize(String group) {
+        if (group == null) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder(group.length());
+        for (String segment : group.split(String.valueOf(SEPARATOR))) {
+            String trimmed = segment.trim();
+            if (!trimmed.isEmpty()) {
+                if (path.length() > 0) {
+                    path.append(SEPARATOR);
+                }
+                path.append(trimmed);
+            }
+        }
+        return path.length() > 0 ? path.toString() : null;
+    }
+
+    public synchronized void add(Waypoint waypoint, String group, double x, double y, double z) {
+        String path = normalize(group);
+        if (path == null) {
+            return;
+        }
+        Node node = getOrCreate(path);
+        Member previous = node.members.put(waypoint.getId(), new Member(waypoint, x, y, z));
+        for (Node n = node; n != null; n = n.parent) {
+            if (previous == null) {
+                n.total++;
+            } else if (!n.boundsStale && n.onEdge(previous.x, previous.y, previous.z)) {
+                n.boundsStale = true;
+            }
+            if (!n.boundsStale) {
+                n.include(x, y, z);
+            }
+        }
+    }
+
+    // group and the coordinates must be the ones the waypoint was added with
+    public synchronized void remove(Waypoint waypoint, String group, double x, double y, double z) {
+        Node node = nodes.get(normalize(group));
+        if (node == null || node.members.remove(waypoint.getId()) == null) {
+            return;
+        }
+        for (Node n = node; n != null; n = n.parent) {
+            n.total--;
+            if (!n.boundsStale && n.onEdge(x, y, z)) {
+                n.boundsStale = true;
+            }
+        }
+        prune(node);
+    }
+
+    // Drops every waypoint but remembers which groups are hidden or have beams
+    public synchronized void clear() {
+        List<String> hiddenPaths = new ArrayList<>(hiddenGroups());
+        List<String> beamPaths = new ArrayList<>(beamGroups());
+        root.children.clear();
+        root.members.clear();
+        root.total = 0;
+        root.resetBounds();
+        root.boundsStale = false;
+        nodes.clear();
+        for (String path : hiddenPaths) {
+            setHidden(path, true);
+        }
+        for (String path : beamPaths) {
+            setBeam(path, true);
+        }
+    }
+
+    // Hides or shows a group and everything below it
+    public synchronized void setHidden(String group, boolean hidden) {
+        String path = normalize(group);
+        if (path == null) {
+            return;
+        }
+        Node node = getOrCreate(path);
+        node.hiddenSelf = hidden;
+        propagateFlags(node);
+        prune(node);
+    }
+
+    // True if the group or any of its ancestors is hidden
+    public synchronized boolean isHidden(String group) {
+        Node node = closest(group);
+        return node != null && node.hidden;
+    }
+
+    public synchronized Set<String> hiddenGroups() {
+        Set<String> hidden = new TreeSet<>();
+        for (Node node : nodes.values()) {
+            if (node.hiddenSelf) {
+                hidden.add(node.path);
+            }
+        }
+        return hidden;
+    }
+
+    // Gives a group and everything below it beams, or takes them away
+    public synchronized void setBeam(String group, boolean beam) {
+        String path = normalize(group);
+        if (path == null) {
+            return;
+        }
+        Node node = getOrCreate(path);
+        node.beamSelf = beam;
+        propagateFlags(node);
+        prune(node);
+    }
+
+    // True if the group or any of its ancestors has beams turned on
+    public synchronized boolean hasBeam(String group) {
+        Node node = closest(group);
+        return node != null && node.beam;
+    }
+
+    public synchronized Set<String> beamGroups() {
+        Set<String> beams = new TreeSet<>();
+        for (Node node : nodes.values()) {
+            if (node.beamSelf) {
+                beams.add(node.path);
+            }
+        }
+        return beams;
+    }
+
+    // Every group with waypoints in its subtree, including parent groups
+    public synchronized Set<String> paths() {
+        Set<String> paths = new TreeSet<>();
+        for (Node node : nodes.values()) {
+            if (node.total > 0) {
+                paths.add(node.path);
+            }
+        }
+        return paths;
+    }
+
+    // Direct subgroups; null or an empty path lists the top-level groups
+    public synchronized List<String> children(String group) {
+        Node node = nodeOrRoot(group);
+        List<String> children = new ArrayList<>();
+        if (node != null) {
+            for (Node child : node.children.values()) {
+                if (child.total > 0) {
+                    children.add(child.path);
+                }
+            }
+        }
+        return children;
+    }
+
+    public synchronized List<Waypoint> members(String group, boolean includeSubgroups) {
+        List<Waypoint> members = new ArrayList<>();
+        Node node = nodes.get(normalize(group));
+        if (node != null) {
+            collect(node, includeSubgroups, members);
+        }
+        return members;
+    }
+
+    public synchronized int count(String group) {
+        Node node = nodeOrRoot(group);
+        return node != null ? node.total : 0;
+    }
+
+    public synchronized GroupSummary summary(String group) {
+        Node node = nodeOrRoot(group);
+        if (node == null) {
+            String path = normalize(group);
+            return new GroupSummary(path, 0, 0, isHidden(path),
+                    Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        refreshBounds(node);
+        boolean empty = node.total == 0;
+        return new GroupSummary(node.path, node.members.size(), node.total, node.hidden,
+                empty ? Double.NaN : node.minX, empty ? Double.NaN : node.minY, empty ? Double.NaN : node.minZ,
+                empty ? Double.NaN : node.maxX, empty ? Double.NaN : node.maxY, empty ? Double.NaN : node.maxZ);
+    }
+
+    // The group's node, or its nearest indexed ancestor
+    private Node closest(String group) {
+        if (group == null || nodes.isEmpty()) {
+            return null;
+        }
+        Node node = nodes.get(group);
+        if (node != null) {
+            return node;
+        }
+        String path = normalize(group);
+        if (path == null) {
+            return null;
+        }
+        // Not indexed (e.g. only in the mapped archive); check the ancestors
+        for (node = nodes.get(path); node == null; node = nodes.get(path)) {
+            int cut = path.lastIndexOf(SEPARATOR);
+            if (cut < 0) {
+                return null;
+            }
+            path = path.substring(0, cut);
+        }
+        return node;
+    }
+
+    private Node nodeOrRoot(String group) {
+        String path = normalize(group);
+        return path == null ? root : nodes.get(path);
+    }
+
+    private Node getOrCreate(String path) {
+        Node node = nodes.get(path);
+        if (node != null) {
+            return node;
+        }
+        int cut = path.lastIndexOf(SEPARATOR);
+        Node parent = cut < 0 ? root : getOrCreate(path.substring(0, cut));
+        node = new Node(path, parent);
+        parent.children.put(path.substring(cut + 1), node);
+        nodes.put(path, node);
+        return node;
+    }
+
+    // Removes empty nodes that are not holding a hidden or beam flag
+    private void prune(Node node) {
+        while (node != root && node.total == 0 && !node.hiddenSelf && !node.beamSelf && node.children.isEmpty()) {
+            node.parent.children.remove(node.path.substring(node.path.lastIndexOf(SEPARATOR) + 1));
+            nodes.remove(node.path);
+            node = node.parent;
+        }
+    }
+
+    private static void propagateFlags(Node node) {
+        node.hidden = node.hiddenSelf || (node.parent != null && node.parent.hidden);
+        node.beam = node.beamSelf || (node.parent != null && node.parent.beam);
+        for (Node child : node.children.values()) {
+            propagateFlags(child);
+        }
+    }
+
+    private static void refreshBounds(Node node) {
+        if (!node.boundsStale) {
+            return;
+        }
+        node.resetBounds();
+        for (Member member : node.members.values()) {
+            node.include(member.x, member.y, member.z);
+        }
+        for (Node child : node.children.values()) {
+            if (child.total > 0) {
+                refreshBounds(child);
+                node.include(child);
+            }
+        }
+        node.boundsStale = false;
+    }
+
+    private static void collect(Node node, boolean includeSubgroups, List<Waypoint> out) {
+        for (Member member : node.members.values()) {
+            out.add(member.waypoint);
+        }
+        if (includeSubgroups) {
+            for (Node child : node.children.values()) {
+                collect(child, true, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds waypoints within a small radius of another, for spotting near
+// duplicates. Cells are as wide as the radius, so a lookup checks the 3x3
+// x/z cells around the point and nothing else; with bounded density both
+// adding and finding are constant time, and a whole import is linear.
+// Cells are per dimension. Not thread-safe.
+public class ProximityHash {
+    private final double radius;
+    private final double radiusSquared;
+    private final boolean matchNames;
+    private final Map<String, Map<Long, List<Waypoint>>> dimensions = new HashMap<>();
+
+    // With matchNames set, waypoints only count as duplicates if their names
+    // are also similar
+    public ProximityHash(double radius, boolean matchNames) {
+        this.radius = Math.max(radius, 0.5);
+        this.radiusSquared = Math.max(0, radius) * Math.max(0, radius);
+        this.matchNames = matchNames;
+    }
+
+    public void add(Waypoint waypoint) {
+        dimensions.computeIfAbsent(waypoint.getDimension(), k -> new HashMap<>())
+                .computeIfAbsent(key(cell(waypoint.getX()), cell(waypoint.getZ())), k -> new ArrayList<>(2))
+                .add(waypoint);
+    }
+
+    public void remove(Waypoint waypoint) {
+        Map<Long, List<Waypoint>> cells = dimensions.get(waypoint.getDimension());
+        if (cells == null) {
+            return;
+        }
+        long key = key(cell(waypoint.getX()), cell(waypoint.getZ()));
+        List<Waypoint> entries = cells.get(key);
+        if (entries != null) {
+            entries.removeIf(entry -> entry.getId().equals(waypoint.getId()));
+            if (entries.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    // The closest other waypoint within the radius in the same dimension, or
+    // null if there is none
+    public Waypoint findNear(Waypoint waypoint) {
+        Map<Long, List<Waypoint>> cells = dimensions.get(waypoint.getDimension());
+        if (cells == null) {
+            return null;
+        }
+        int cellX = cell(waypoint.getX());
+        int cellZ = cell(waypoint.getZ());
+        Waypoint nearest = null;
+        double nearestDistance = radiusSquared;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                List<Waypoint> entries = cells.get(key(cellX + dx, cellZ + dz));
+                if (entries == null) {
+                    continue;
+                }
+                for (int i = 0; i < entries.size(); i++) {
+                    Waypoint candidate = entries.get(i);
+                    double distance = distanceSquared(candidate, waypoint);
+                    if (distance <= nearestDistance && !candidate.getId().equals(waypoint.getId())
+                            && (!matchNames || similarNames(candidate.getName(), waypoint.getName()))) {
+                        nearest = candidate;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    // Same name ignoring case, one contained in the other, or a couple of
+    // typos apart
+    public static boolean similarNames(String a, String b) {
+        String first = SearchIndex.normalize(a);
+        String second = SearchIndex.normalize(b);
+        if (first.isEmpty() || second.isEmpty()) {
+            return first.equals(second);
+        }
+        return first.contains(second) || second.contains(first) || withinEdits(first, second, 2);
+    }
+
+    // Levenshtein distance of at most limit, giving up once a row exceeds it
+    private static boolean withinEdits(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return false;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            int best = row[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                best = Math.min(best, row[j]);
+            }
+            if (best > limit) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[b.length()] <= limit;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / radius);
+    }
+
+    private static double distanceSquared(Waypoint a, Waypoint b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        double dz = a.getZ() - b.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,387 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Trigram inverted index over waypoint names and groups. Every waypoint gets
+// an int slot and each trigram maps to the slots containing it, so a query
+// only verifies the slots of its rarest trigram instead of lowercasing and
+// scanning every waypoint.
+//
+// Removed slots are left in the posting lists and skipped on lookup; the
+// whole index is rebuilt once dead slots outnumber live ones.
+public class SearchIndex {
+    // Match ranks, best first
+    public static final int EXACT = 0;
+    public static final int PREFIX = 1;
+    public static final int SUBSTRING = 2;
+    public static final int GROUP_EXACT = 3;
+    public static final int GROUP_PREFIX = 4;
+    public static final int GROUP_SUBSTRING = 5;
+    public static final int TYPO = 6;
+    private static final int RANKS = 7;
+    private static final int NO_MATCH = -1;
+    private static final int ANY_DIMENSION = -1;
+
+    private static final int GRAM = 3;
+    private static final int MIN_TYPO_QUERY = 4;
+    private static final int MAX_TYPO_RESULTS = 50;
+    private static final int MIN_REBUILD_SLOTS = 1024;
+
+    private static final class Doc {
+        final Waypoint waypoint;
+        final String name;
+        final String group;
+        // WaypointDimension handle
+        final int dimension;
+
+        Doc(Waypoint waypoint, String name, String group, int dimension) {
+            this.waypoint = waypoint;
+            this.name = name;
+            this.group = group;
+            this.dimension = dimension;
+        }
+
+        boolean sameText(Doc other) {
+            return name.equals(other.name) && group.equals(other.group) && dimension == other.dimension;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private final Object2IntOpenHashMap<String> slotById = new Object2IntOpenHashMap<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private Doc[] docs = new Doc[64];
+    private int slots;
+    private int live;
+
+    // Per-query scratch space, reused to keep lookups allocation-light
+    private int[] seen = new int[64];
+    private int[] hits = new int[64];
+    private int epoch;
+    private int[] distanceRow = new int[32];
+    private int[] distancePrevious = new int[32];
+
+    public SearchIndex() {
+        slotById.defaultReturnValue(-1);
+    }
+
+    public synchronized void put(Waypoint waypoint) {
+        Doc doc = new Doc(waypoint, normalize(waypoint.getName()), normalize(waypoint.getGroup()),
+                WaypointDimension.register(waypoint.getDimension()).getHandle());
+        int slot = slotById.getInt(waypoint.getId());
+        if (slot >= 0) {
+            if (docs[slot].sameText(doc)) {
+                docs[slot] = doc;
+                return;
+            }
+            docs[slot] = null;
+            live--;
+        }
+        slotById.put(waypoint.getId(), add(doc));
+        live++;
+        maybeRebuild();
+    }
+
+    public synchronized void remove(Waypoint waypoint) {
+        int slot = slotById.removeInt(waypoint.getId());
+        if (slot >= 0) {
+            docs[slot] = null;
+            live--;
+            maybeRebuild();
+        }
+    }
+
+    // Waypoints currently indexed
+    public synchronized int size() {
+        return live;
+    }
+
+    public synchronized void clear() {
+        slotById.clear();
+        postings.clear();
+        docs = new Doc[64];
+        slots = 0;
+        live = 0;
+    }
+
+    // Waypoints whose name or group contains the query, ordered exact, prefix,
+    // substring (names before groups). With typoTolerant set and few direct
+    // matches, up to MAX_TYPO_RESULTS names within a small edit distance of
+    // the query follow at the end. dimension may be null to search every
+    // dimension.
+    public synchronized List<Waypoint> search(String query, WaypointDimension in, boolean typoTolerant) {
+        String q = normalize(query);
+        int dimension = in != null ? in.getHandle() : ANY_DIMENSION;
+        if (q.isEmpty() || live == 0) {
+            return new ArrayList<>();
+        }
+        List<List<Waypoint>> ranked = new ArrayList<>(RANKS);
+        for (int i = 0; i < RANKS; i++) {
+            ranked.add(new ArrayList<>());
+        }
+
+        int mark = nextEpoch();
+        long[] grams = Arrays.stream(grams(q)).distinct().toArray();
+        if (grams.length == 0) {
+            // Too short for a trigram; the stored text is already lowercased
+            for (int slot = 0; slot < slots; slot++) {
+                collect(slot, q, dimension, mark, ranked);
+            }
+        } else {
+            IntList rarest = null;
+            for (long gram : grams) {
+                IntList posting = postings.get(gram);
+                if (posting == null) {
+                    rarest = null;
+                    break;
+                }
+                if (rarest == null || posting.size < rarest.size) {
+                    rarest = posting;
+                }
+            }
+            if (rarest != null) {
+                for (int i = 0; i < rarest.size; i++) {
+                    collect(rarest.values[i], q, dimension, mark, ranked);
+                }
+            }
+            // Near misses only help when the query found little by itself
+            if (typoTolerant && q.length() >= MIN_TYPO_QUERY && countRanked(ranked) < MAX_TYPO_RESULTS) {
+                collectTypos(q, grams, dimension, mark, ranked.get(TYPO));
+            }
+        }
+
+        List<Waypoint> result = new ArrayList<>(countRanked(ranked));
+        for (List<Waypoint> tier : ranked) {
+            result.addAll(tier);
+        }
+        return result;
+    }
+
+    // Rank of a waypoint for a normalized query, or -1 if it does not match.
+    // Exposed for waypoints that are not in the index, such as mapped ones.
+    public static int rank(String normalizedQuery, Waypoint waypoint) {
+        return rank(normalizedQuery, normalize(waypoint.getName()), normalize(waypoint.getGroup()));
+    }
+
+    public static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).trim();
+    }
+
+    private void collect(int slot, String q, int dimension, int mark, List<List<Waypoint>> ranked) {
+        Doc doc = docs[slot];
+        if (doc == null || (dimension != ANY_DIMENSION && dimension != doc.dimension)) {
+            return;
+        }
+        int rank = rank(q, doc.name, doc.group);
+        if (rank != NO_MATCH) {
+            // Marked so the typo pass does not list it a second time
+            seen[slot] = mark;
+            ranked.get(rank).add(doc.waypoint);
+        }
+    }
+
+    private static int countRanked(List<List<Waypoint>> ranked) {
+        int total = 0;
+        for (List<Waypoint> tier : ranked) {
+            total += tier.size();
+        }
+        return total;
+    }
+
+    private static int rank(String q, String name, String group) {
+        if (name.equals(q)) {
+            return EXACT;
+        }
+        if (name.startsWith(q)) {
+            return PREFIX;
+        }
+        if (name.contains(q)) {
+            return SUBSTRING;
+        }
+        if (group.equals(q)) {
+            return GROUP_EXACT;
+        }
+        if (group.startsWith(q)) {
+            return GROUP_PREFIX;
+        }
+        if (group.contains(q)) {
+            return GROUP_SUBSTRING;
+        }
+        return NO_MATCH;
+    }
+
+    // Names sharing trigrams with the query that are within maxTypos edits of
+    // some part of the name. Each edit can destroy at most GRAM trigrams, which
+    // bounds how many a real match must still share.
+    private void collectTypos(String q, long[] grams, int dimension, int mark, List<Waypoint> out) {
+        int maxTypos = q.length() < 8 ? 1 : 2;
+        int required = Math.max(1, grams.length - GRAM * maxTypos);
+        IntList touched = new IntList();
+        for (long gram : grams) {
+            IntList posting = postings.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            for (int i = 0; i < posting.size; i++) {
+                int slot = posting.values[i];
+                if (seen[slot] == mark) {
+                    continue;
+                }
+                if (hits[slot]++ == 0) {
+                    touched.add(slot);
+                }
+            }
+        }
+
+        // Bucket candidates by shared trigrams so the closest are verified first
+        IntList[] byHits = new IntList[grams.length + 1];
+        for (int i = 0; i < touched.size; i++) {
+            int slot = touched.values[i];
+            int count = hits[slot];
+            hits[slot] = 0;
+            if (count >= required) {
+                if (byHits[count] == null) {
+                    byHits[count] = new IntList();
+                }
+                byHits[count].add(slot);
+            }
+        }
+
+        for (int count = grams.length; count >= required; count--) {
+            IntList candidates = byHits[count];
+            if (candidates == null) {
+                continue;
+            }
+            for (int i = 0; i < candidates.size; i++) {
+                int slot = candidates.values[i];
+                Doc doc = docs[slot];
+                if (doc == null || (dimension != ANY_DIMENSION && dimension != doc.dimension)) {
+                    continue;
+                }
+                if (substringDistance(q, doc.name, maxTypos) <= maxTypos) {
+                    seen[slot] = mark;
+                    out.add(doc.waypoint);
+                    if (out.size() == MAX_TYPO_RESULTS) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // Smallest edit distance between the query and any substring of text,
+    // giving up early once every entry of a row exceeds limit.
+    private int substringDistance(String q, String text, int limit) {
+        int n = text.length();
+        if (distanceRow.length <= n) {
+            distanceRow = new int[n + 1];
+            distancePrevious = new int[n + 1];
+        }
+        int[] previous = distancePrevious;
+        int[] row = distanceRow;
+        Arrays.fill(previous, 0, n + 1, 0);
+        for (int i = 1; i <= q.length(); i++) {
+            row[0] = i;
+            int best = i;
+            char c = q.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = previous[j - 1] + (c == text.charAt(j - 1) ? 0 : 1);
+                row[j] = Math.min(cost, Math.min(previous[j], row[j - 1]) + 1);
+                best = Math.min(best, row[j]);
+            }
+            if (best > limit) {
+                return best;
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        int best = Integer.MAX_VALUE;
+        for (int j = 0; j <= n; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    private int add(Doc doc) {
+        int slot = slots++;
+        if (slot == docs.length) {
+            docs = Arrays.copyOf(docs, slot * 2);
+        }
+        docs[slot] = doc;
+        Set<Long> distinct = new HashSet<>();
+        for (long gram : grams(doc.name)) {
+            distinct.add(gram);
+        }
+        for (long gram : grams(doc.group)) {
+            distinct.add(gram);
+        }
+        for (Long gram : distinct) {
+            postings.computeIfAbsent(gram, k -> new IntList()).add(slot);
+        }
+        return slot;
+    }
+
+    private void maybeRebuild() {
+        if (slots < MIN_REBUILD_SLOTS || slots - live <= live) {
+            return;
+        }
+        Doc[] previous = docs;
+        int previousSlots = slots;
+        slotById.clear();
+        postings.clear();
+        docs = new Doc[Math.max(64, live * 2)];
+        slots = 0;
+        for (int slot = 0; slot < previousSlots; slot++) {
+            Doc doc = previous[slot];
+            if (doc != null) {
+                slotById.put(doc.waypoint.getId(), add(doc));
+            }
+        }
+    }
+
+    private int nextEpoch() {
+        if (seen.length < docs.length) {
+            seen = new int[docs.length];
+            hits = new int[docs.length];
+        }
+        if (++epoch == 0) {
+            Arrays.fill(seen, 0);
+            epoch = 1;
+        }
+        return epoch;
+    }
+
+    private static long[] grams(String text) {
+        int count = text.length() - GRAM + 1;
+        if (count <= 0) {
+            return new long[0];
+        }
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,273 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+// Hash grid over the waypoints of one dimension. Cells are CELL_SIZE blocks
+// square in x/z and unbounded in y, since waypoints spread out horizontally
+// far more than vertically. Positions are recorded when a waypoint is added,
+// so it can still be found and removed after its coordinates were changed in
+// place.
+public class SpatialGrid {
+    private static final int CELL_SHIFT = 8;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final int PROBES_PER_ENTRY = 8;
+
+    private static final class Entry {
+        final Waypoint waypoint;
+        final double x;
+        final double y;
+        final double z;
+
+        Entry(Waypoint waypoint, double x, double y, double z) {
+            this.waypoint = waypoint;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        double distanceSquared(double px, double py, double pz) {
+            double dx = x - px;
+            double dy = y - py;
+            double dz = z - pz;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    private static final class Candidate {
+        final Waypoint waypoint;
+        final double distanceSquared;
+
+        Candidate(Waypoint waypoint, double distanceSquared) {
+            this.waypoint = waypoint;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private int size;
+    // Bounds of every cell ever used; they only grow, which keeps nearest()
+    // from searching past the populated area without rescanning on removal.
+    private int minCellX = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE;
+    private int minCellZ = Integer.MAX_VALUE;
+    private int maxCellZ = Integer.MIN_VALUE;
+
+    public synchronized void add(Waypoint waypoint, double x, double y, double z) {
+        int cellX = cell(x);
+        int cellZ = cell(z);
+        cells.computeIfAbsent(key(cellX, cellZ), k -> new ArrayList<>(4)).add(new Entry(waypoint, x, y, z));
+        size++;
+        minCellX = Math.min(minCellX, cellX);
+        maxCellX = Math.max(maxCellX, cellX);
+        minCellZ = Math.min(minCellZ, cellZ);
+        maxCellZ = Math.max(maxCellZ, cellZ);
+    }
+
+    // x and z must be the coordinates the waypoint was added with
+    public synchronized void remove(Waypoint waypoint, double x, double z) {
+        long key = key(cell(x), cell(z));
+        List<Entry> entries = cells.get(key);
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).waypoint.getId().equals(waypoint.getId())) {
+                // Order within a cell does not matter
+                int last = entries.size() - 1;
+                entries.set(i, entries.get(last));
+                entries.remove(last);
+                size--;
+                break;
+            }
+        }
+        if (entries.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Waypoints within radius of the given point, in no particular order
+    public synchronized List<Waypoint> withinRadius(double x, double y, double z, double radius,
+                                                    Predicate<Waypoint> filter) {
+        List<Waypoint> result = new ArrayList<>();
+        if (size == 0) {
+            return result;
+        }
+
+        double radiusSquared = radius * radius;
+        for (List<Entry> entries : cellsIn(cell(x - radius), cell(z - radius), cell(x + radius), cell(z + radius))) {
+            for (Entry entry : entries) {
+                if (entry.distanceSquared(x, y, z) <= radiusSquared && accept(filter, entry.waypoint)) {
+                    result.add(entry.waypoint);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Waypoints inside the axis-aligned box, bounds inclusive
+    public synchronized List<Waypoint> withinBox(double minX, double minY, double minZ,
+                                                 double maxX, double maxY, double maxZ,
+                                                 Predicate<Waypoint> filter) {
+        List<Waypoint> result = new ArrayList<>();
+        if (size == 0) {
+            return result;
+        }
+
+        for (List<Entry> entries : cellsIn(cell(minX), cell(minZ), cell(maxX), cell(maxZ))) {
+            for (Entry entry : entries) {
+                if (entry.x >= minX && entry.x <= maxX && entry.y >= minY && entry.y <= maxY
+                        && entry.z >= minZ && entry.z <= maxZ && accept(filter, entry.waypoint)) {
+                    result.add(entry.waypoint);
+                }
+            }
+        }
+        return result;
+    }
+
+    // The limit closest waypoints, nearest first. Searches rings of cells
+    // outward from the query point and stops once no unvisited cell can hold
+    // anything closer than the current limit-th candidate. When waypoints are
+    // so sparse that the rings would probe more cells than are occupied, it
+    // scans the occupied cells instead.
+    public synchronized List<Waypoint> nearest(double x, double y, double z, int limit,
+                                               Predicate<Waypoint> filter) {
+        if (size == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Max-heap of the best candidates so far
+        PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1,
+                (a, b) -> Double.compare(b.distanceSquared, a.distanceSquared));
+        int centerX = cell(x);
+        int centerZ = cell(z);
+        int maxRing = Math.max(
+                Math.max(Math.abs(centerX - minCellX), Math.abs(maxCellX - centerX)),
+                Math.max(Math.abs(centerZ - minCellZ), Math.abs(maxCellZ - centerZ)));
+
+        int probes = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best.size() == limit) {
+                // Closest any cell of this ring can be, measured horizontally
+                double gap = ringGap(x, z, centerX, centerZ, ring);
+                if (gap * gap > best.peek().distanceSquared) {
+                    break;
+                }
+            }
+            // A cell lookup costs several distance checks
+            probes += ring == 0 ? 1 : 8 * ring;
+            if (probes > size / PROBES_PER_ENTRY) {
+                best.clear();
+                for (List<Entry> entries : cells.values()) {
+                    offer(best, limit, entries, x, y, z, filter);
+                }
+                break;
+            }
+            for (int cellX = centerX - ring; cellX <= centerX + ring; cellX++) {
+                boolean edgeColumn = cellX == centerX - ring || cellX == centerX + ring;
+                int step = edgeColumn ? 1 : Math.max(1, 2 * ring);
+                for (int cellZ = centerZ - ring; cellZ <= centerZ + ring; cellZ += step) {
+                    List<Entry> entries = cells.get(key(cellX, cellZ));
+                    if (entries != null) {
+                        offer(best, limit, entries, x, y, z, filter);
+                    }
+                }
+            }
+        }
+
+        Waypoint[] ordered = new Waypoint[best.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            ordered[i] = best.poll().waypoint;
+        }
+        return new ArrayList<>(List.of(ordered));
+    }
+
+    private static void offer(PriorityQueue<Candidate> best, int limit, List<Entry> entries,
+                              double x, double y, double z, Predicate<Waypoint> filter) {
+        for (Entry entry : entries) {
+            if (!accept(filter, entry.waypoint)) {
+                continue;
+            }
+            double distanceSquared = entry.distanceSquared(x, y, z);
+            if (best.size() < limit) {
+                best.add(new Candidate(entry.waypoint, distanceSquared));
+            } else if (distanceSquared < best.peek().distanceSquared) {
+                best.poll();
+                best.add(new Candidate(entry.waypoint, distanceSquared));
+            }
+        }
+    }
+
+    // Occupied cells overlapping the given cell range. Looks each cell up
+    // while the range is small, and filters the occupied cells once the range
+    // covers more cells than are occupied.
+    private List<List<Entry>> cellsIn(int fromX, int fromZ, int toX, int toZ) {
+        fromX = Math.max(fromX, minCellX);
+        toX = Math.min(toX, maxCellX);
+        fromZ = Math.max(fromZ, minCellZ);
+        toZ = Math.min(toZ, maxCellZ);
+        List<List<Entry>> found = new ArrayList<>();
+        if (fromX > toX || fromZ > toZ) {
+            return found;
+        }
+
+        long area = (long) (toX - fromX + 1) * (toZ - fromZ + 1);
+        if (area > cells.size() / PROBES_PER_ENTRY) {
+            for (Map.Entry<Long, List<Entry>> cell : cells.entrySet()) {
+                long key = cell.getKey();
+                int cellX = (int) (key >> 32);
+                int cellZ = (int) key;
+                if (cellX >= fromX && cellX <= toX && cellZ >= fromZ && cellZ <= toZ) {
+                    found.add(cell.getValue());
+                }
+            }
+            return found;
+        }
+
+        for (int cellX = fromX; cellX <= toX; cellX++) {
+            for (int cellZ = fromZ; cellZ <= toZ; cellZ++) {
+                List<Entry> entries = cells.get(key(cellX, cellZ));
+                if (entries != null) {
+                    found.add(entries);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Horizontal distance from the point to the nearest edge of the given ring
+    private static double ringGap(double x, double z, int centerX, int centerZ, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double inX = Math.min(x - ((double) (centerX - ring + 1) * CELL_SIZE), ((double) (centerX + ring) * CELL_SIZE) - x);
+        double inZ = Math.min(z - ((double) (centerZ - ring + 1) * CELL_SIZE), ((double) (centerZ + ring) * CELL_SIZE) - z);
+        return Math.max(0, Math.min(inX, inZ));
+    }
+
+    private static boolean accept(Predicate<Waypoint> filter, Waypoint waypoint) {
+        return filter == null || filter.test(waypoint);
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
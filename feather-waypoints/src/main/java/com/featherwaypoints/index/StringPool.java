@@ -0,0 +1,50 @@
+package com.featherwaypoints.index;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Interns strings as small int handles, for columns that would otherwise
+// hold one reference per row to a handful of distinct values. Handles are
+// never reused, so they stay valid for the life of the pool; 0 stands for
+// null. Not thread-safe; the owner guards it.
+public class StringPool {
+    public static final int NULL = 0;
+
+    private final Object2IntOpenHashMap<String> handles = new Object2IntOpenHashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public StringPool() {
+        handles.defaultReturnValue(-1);
+        values.add(null);
+    }
+
+    // The handle of value, adding it if it is new
+    public int handle(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        int handle = handles.getInt(value);
+        if (handle < 0) {
+            handle = values.size();
+            handles.put(value, handle);
+            values.add(value);
+        }
+        return handle;
+    }
+
+    // The handle of value, or -1 if it was never added
+    public int find(String value) {
+        return value == null ? NULL : handles.getInt(value);
+    }
+
+    public String get(int handle) {
+        return values.get(handle);
+    }
+
+    // Number of handles given out, counting the one for null
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,213 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Secondary indexes over the in-memory waypoints, kept up to date by
+// WaypointManager on every change. The waypoints themselves live in a
+// WaypointTable, which also remembers the keys each was indexed under, so an
+// update still finds the old buckets after the caller has already changed
+// the waypoint through its setters.
+//
+// Dimension and visibility lookups follow the table's chain of rows for that
+// dimension, so they cost what the dimension holds. Groups are kept in a
+// GroupTree, each dimension has a SpatialGrid for nearest, radius and box
+// queries, and names and groups are fed to a SearchIndex.
+//
+// Every change also stamps the dimensions it touched with a new value of a
+// global epoch, so readers can tell cheaply whether a dimension changed.
+// Per-dimension state is kept in arrays by WaypointDimension handle. Only one
+// thread may change the index at a time; readers can run alongside.
+public class WaypointIndex {
+    private static final SpatialGrid EMPTY_GRID = new SpatialGrid();
+
+    private final WaypointTable table = new WaypointTable();
+    private final GroupTree groups = new GroupTree();
+    private final SearchIndex search = new SearchIndex();
+    private final AtomicLong epoch = new AtomicLong();
+    // Replaced with larger copies as new dimensions come up
+    private volatile AtomicReferenceArray<SpatialGrid> spatial = new AtomicReferenceArray<>(4);
+    private volatile AtomicLongArray dimensionVersions = new AtomicLongArray(4);
+    // Stamped by changes that may affect any dimension
+    private volatile long sharedVersion;
+
+    // Adds a waypoint or re-indexes it after a change. A different object
+    // with the id of one already here replaces it.
+    public void put(Waypoint waypoint) {
+        search.put(waypoint);
+        int row = table.find(waypoint.getId());
+        if (row >= 0) {
+            Waypoint previous = table.waypoint(row);
+            int dimension = table.dimension(row);
+            String group = table.group(row);
+            double x = table.x(row);
+            double y = table.y(row);
+            double z = table.z(row);
+            table.put(waypoint);
+            touch(dimension);
+            if (dimension == table.dimension(row) && Objects.equals(group, waypoint.getGroup())
+                    && x == waypoint.getX() && y == waypoint.getY() && z == waypoint.getZ()) {
+                // Same buckets, but refresh the instance in case a new object replaced the old one
+                groups.add(waypoint, group, x, y, z);
+                SpatialGrid grid = grid(dimension);
+                grid.remove(previous, x, z);
+                grid.add(waypoint, x, y, z);
+                return;
+            }
+            unlink(previous, dimension, group, x, y, z);
+        } else {
+            row = table.put(waypoint);
+        }
+        int dimension = table.dimension(row);
+        link(waypoint, dimension);
+        touch(dimension);
+    }
+
+    // Drops the waypoint with the given id and returns the object that was indexed, or null
+    public Waypoint remove(String id) {
+        int row = table.find(id);
+        if (row < 0) {
+            return null;
+        }
+        Waypoint previous = table.waypoint(row);
+        int dimension = table.dimension(row);
+        unlink(previous, dimension, table.group(row), table.x(row), table.y(row), table.z(row));
+        search.remove(previous);
+        table.remove(id);
+        touch(dimension);
+        return previous;
+    }
+
+    public Waypoint get(String id) {
+        return table.get(id);
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    // Copies of the indexed waypoints; the objects themselves are shared
+    public List<Waypoint> all() {
+        return table.all();
+    }
+
+    public void clear() {
+        table.clear();
+        groups.clear();
+        search.clear();
+        AtomicReferenceArray<SpatialGrid> grids = spatial;
+        AtomicLongArray versions = dimensionVersions;
+        for (int handle = 0; handle < grids.length(); handle++) {
+            grids.set(handle, null);
+            versions.set(handle, epoch.incrementAndGet());
+        }
+    }
+
+    // Hiding a group changes what is shown in every dimension
+    public void setGroupHidden(String group, boolean hidden) {
+        groups.setHidden(group, hidden);
+        invalidateAll();
+    }
+
+    public void setGroupBeam(String group, boolean beam) {
+        groups.setBeam(group, beam);
+        invalidateAll();
+    }
+
+    // For changes made outside the index, such as to the mapped archive
+    public void invalidateAll() {
+        sharedVersion = epoch.incrementAndGet();
+    }
+
+    // Changes whenever a waypoint of the dimension or a group's visibility changes
+    public long version(WaypointDimension dimension) {
+        AtomicLongArray versions = dimensionVersions;
+        int handle = dimension.getHandle();
+        return Math.max(handle < versions.length() ? versions.get(handle) : 0, sharedVersion);
+    }
+
+    private void touch(int dimension) {
+        grow(dimension);
+        dimensionVersions.set(dimension, epoch.incrementAndGet());
+    }
+
+    public List<Waypoint> inDimension(WaypointDimension dimension) {
+        return table.inDimension(dimension.getHandle(), false);
+    }
+
+    public List<Waypoint> visibleInDimension(WaypointDimension dimension) {
+        return table.inDimension(dimension.getHandle(), true);
+    }
+
+    // Dimensions with at least one waypoint
+    public List<String> dimensions() {
+        return table.dimensions();
+    }
+
+    public GroupTree groups() {
+        return groups;
+    }
+
+    // Empty grid for dimensions without waypoints
+    public SpatialGrid spatial(WaypointDimension dimension) {
+        AtomicReferenceArray<SpatialGrid> grids = spatial;
+        int handle = dimension.getHandle();
+        SpatialGrid grid = handle < grids.length() ? grids.get(handle) : null;
+        return grid != null ? grid : EMPTY_GRID;
+    }
+
+    public SearchIndex search() {
+        return search;
+    }
+
+    public int countInDimension(WaypointDimension dimension) {
+        return table.countInDimension(dimension.getHandle());
+    }
+
+    private void link(Waypoint waypoint, int dimension) {
+        groups.add(waypoint, waypoint.getGroup(), waypoint.getX(), waypoint.getY(), waypoint.getZ());
+        grid(dimension).add(waypoint, waypoint.getX(), waypoint.getY(), waypoint.getZ());
+    }
+
+    private void unlink(Waypoint waypoint, int dimension, String group, double x, double y, double z) {
+        groups.remove(waypoint, group, x, y, z);
+        AtomicReferenceArray<SpatialGrid> grids = spatial;
+        SpatialGrid grid = dimension < grids.length() ? grids.get(dimension) : null;
+        if (grid != null) {
+            grid.remove(waypoint, x, z);
+        }
+    }
+
+    private SpatialGrid grid(int dimension) {
+        grow(dimension);
+        SpatialGrid grid = spatial.get(dimension);
+        if (grid == null) {
+            grid = new SpatialGrid();
+            spatial.set(dimension, grid);
+        }
+        return grid;
+    }
+
+    // Makes room for the handle; readers keep using the old arrays until the
+    // new ones are published
+    private void grow(int dimension) {
+        if (dimension < spatial.length() && dimension < dimensionVersions.length()) {
+            return;
+        }
+        int length = Math.max(dimension + 1, WaypointDimension.count());
+        AtomicReferenceArray<SpatialGrid> grids = new AtomicReferenceArray<>(length);
+        AtomicLongArray versions = new AtomicLongArray(length);
+        for (int handle = 0; handle < spatial.length(); handle++) {
+            grids.set(handle, spatial.get(handle));
+            versions.set(handle, dimensionVersions.get(handle));
+        }
+        spatial = grids;
+        dimensionVersions = versions;
+    }
+}
@@ -0,0 +1,66 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Read-only copy of one dimension's waypoints at a given version. The
+// waypoints are private copies, so readers never see a half-applied edit and
+// must not change them; edit a copy() and pass it to updateWaypoint instead.
+// A snapshot is shared by every reader until the dimension changes again.
+public final class WaypointSnapshot {
+    private final String dimension;
+    private final long version;
+    private final List<Waypoint> waypoints;
+    private final List<Waypoint> shown;
+    private final List<Waypoint> beams;
+    // Only the renderer needs it, so it is built on first use
+    private volatile ClusterGrid shownClusters;
+
+    // shown must be a subset of waypoints, and beams a subset of shown
+    public WaypointSnapshot(String dimension, long version, Waypoint[] waypoints, Waypoint[] shown, Waypoint[] beams) {
+        this.dimension = dimension;
+        this.version = version;
+        this.waypoints = Collections.unmodifiableList(Arrays.asList(waypoints));
+        this.shown = Collections.unmodifiableList(Arrays.asList(shown));
+        this.beams = Collections.unmodifiableList(Arrays.asList(beams));
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Waypoint> getWaypoints() {
+        return waypoints;
+    }
+
+    // Waypoints that are visible and not in a hidden group
+    public List<Waypoint> getShownWaypoints() {
+        return shown;
+    }
+
+    // Shown waypoints that should have a beam, from their own flag or a group's
+    public List<Waypoint> getBeamWaypoints() {
+        return beams;
+    }
+
+    public ClusterGrid getShownClusters() {
+        ClusterGrid clusters = shownClusters;
+        if (clusters == null) {
+            synchronized (this) {
+                clusters = shownClusters;
+                if (clusters == null) {
+                    clusters = new ClusterGrid(shown.toArray(new Waypoint[0]));
+                    shownClusters = clusters;
+                }
+            }
+        }
+        return clusters;
+    }
+}
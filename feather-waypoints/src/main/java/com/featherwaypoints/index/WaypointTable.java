@@ -0,0 +1,394 @@
+package com.featherwaypoints.index;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Structure-of-arrays store behind WaypointIndex, one row per in-memory
+// waypoint. The fields the indexes key on sit in primitive columns: the
+// coordinates as doubles, the dimension as its WaypointDimension handle,
+// group and icon as StringPool handles, and the id as the two halves of its
+// UUID in an open-addressed table, in place of a string-keyed hash map with
+// an entry object per waypoint. Ids that are not canonical UUIDs, such as
+// from hand-written imports, fall back to a map of their own.
+//
+// The rows of each dimension are also chained through two int columns, so a
+// dimension's waypoints are found without looking at the rows of any other.
+//
+// The columns keep the values a waypoint was last put with, so they still
+// describe where it is indexed after it was changed in place through its
+// setters. Rows freed by removal are reused. Thread-safe; scans copy what
+// they find, so callers never see the columns change under them.
+public class WaypointTable {
+    private static final int INITIAL_ROWS = 64;
+    private static final byte USED = 1;
+    private static final byte VISIBLE = 1 << 1;
+    private static final byte STRING_ID = 1 << 2;
+
+    private final StringPool strings = new StringPool();
+    private long[] idHigh = new long[INITIAL_ROWS];
+    private long[] idLow = new long[INITIAL_ROWS];
+    private double[] x = new double[INITIAL_ROWS];
+    private double[] y = new double[INITIAL_ROWS];
+    private double[] z = new double[INITIAL_ROWS];
+    private int[] dimension = new int[INITIAL_ROWS];
+    private int[] group = new int[INITIAL_ROWS];
+    private int[] icon = new int[INITIAL_ROWS];
+    private byte[] flags = new byte[INITIAL_ROWS];
+    // Neighbouring rows of the same dimension, -1 at either end
+    private int[] nextInDimension = new int[INITIAL_ROWS];
+    private int[] previousInDimension = new int[INITIAL_ROWS];
+    private Waypoint[] waypoints = new Waypoint[INITIAL_ROWS];
+    // Rows in use are below rowCount; freed ones are reused first
+    private int rowCount;
+    private final IntArrayList freeRows = new IntArrayList();
+    private int size;
+    // Waypoints per dimension handle, and the first and last of their rows
+    private int[] dimensionSizes = new int[4];
+    private int[] dimensionFirst = emptyChains(4);
+    private int[] dimensionLast = emptyChains(4);
+
+    // Linear-probing table of row + 1 by UUID, 0 for an empty slot; kept at
+    // most half full
+    private int[] slots = new int[INITIAL_ROWS * 2];
+    private final Object2IntOpenHashMap<String> stringIds = new Object2IntOpenHashMap<>();
+
+    public WaypointTable() {
+        stringIds.defaultReturnValue(-1);
+    }
+
+    // Row of the waypoint with the given id, or -1
+    public synchronized int find(String id) {
+        if (id == null) {
+            return -1;
+        }
+        if (!isUuid(id)) {
+            return stringIds.getInt(id);
+        }
+        long high = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+        long low = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+        int slot = findSlot(high, low);
+        return slots[slot] - 1;
+    }
+
+    public synchronized Waypoint get(String id) {
+        int row = find(id);
+        return row < 0 ? null : waypoints[row];
+    }
+
+    // Adds the waypoint or, if its id is already here, takes it as the row's
+    // new object and values. Returns the row. Dimension, group and icon
+    // strings are swapped for the registry's and pool's copies, so equal names
+    // share one string however the waypoint was made.
+    public synchronized int put(Waypoint waypoint) {
+        int row = find(waypoint.getId());
+        int previousHandle = -1;
+        if (row < 0) {
+            row = insert(waypoint.getId());
+        } else {
+            previousHandle = dimension[row];
+        }
+
+        WaypointDimension registered = WaypointDimension.register(waypoint.getDimension());
+        int dimensionHandle = registered.getHandle();
+        int groupHandle = strings.handle(waypoint.getGroup());
+        int iconHandle = strings.handle(waypoint.getIcon());
+        if (waypoint.getDimension() != null) {
+            waypoint.setDimension(registered.getId());
+        }
+        waypoint.setGroup(strings.get(groupHandle));
+        waypoint.setIcon(strings.get(iconHandle));
+
+        x[row] = waypoint.getX();
+        y[row] = waypoint.getY();
+        z[row] = waypoint.getZ();
+        dimension[row] = dimensionHandle;
+        group[row] = groupHandle;
+        icon[row] = iconHandle;
+        flags[row] = (byte) ((flags[row] & (USED | STRING_ID)) | (waypoint.isVisible() ? VISIBLE : 0));
+        waypoints[row] = waypoint;
+        // A waypoint that stays in its dimension keeps its place in the chain
+        if (previousHandle != dimensionHandle) {
+            if (previousHandle >= 0) {
+                unlink(row, previousHandle);
+            }
+            link(row, dimensionHandle);
+        }
+        return row;
+    }
+
+    // Removes the waypoint with the given id and returns it, or null
+    public synchronized Waypoint remove(String id) {
+        int row = find(id);
+        if (row < 0) {
+            return null;
+        }
+        if ((flags[row] & STRING_ID) != 0) {
+            stringIds.removeInt(id);
+        } else {
+            deleteSlot(findSlot(idHigh[row], idLow[row]));
+        }
+        Waypoint removed = waypoints[row];
+        unlink(row, dimension[row]);
+        waypoints[row] = null;
+        flags[row] = 0;
+        freeRows.add(row);
+        size--;
+        return removed;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(waypoints, 0, rowCount, null);
+        Arrays.fill(flags, 0, rowCount, (byte) 0);
+        Arrays.fill(slots, 0);
+        Arrays.fill(dimensionSizes, 0);
+        Arrays.fill(dimensionFirst, -1);
+        Arrays.fill(dimensionLast, -1);
+        stringIds.clear();
+        freeRows.clear();
+        rowCount = 0;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Values the row was last put with
+    public synchronized Waypoint waypoint(int row) {
+        return waypoints[row];
+    }
+
+    public synchronized double x(int row) {
+        return x[row];
+    }
+
+    public synchronized double y(int row) {
+        return y[row];
+    }
+
+    public synchronized double z(int row) {
+        return z[row];
+    }
+
+    // WaypointDimension handle
+    public synchronized int dimension(int row) {
+        return dimension[row];
+    }
+
+    public synchronized String group(int row) {
+        return strings.get(group[row]);
+    }
+
+    public synchronized String icon(int row) {
+        return strings.get(icon[row]);
+    }
+
+    public synchronized boolean isVisible(int row) {
+        return (flags[row] & VISIBLE) != 0;
+    }
+
+    public synchronized List<Waypoint> all() {
+        List<Waypoint> all = new ArrayList<>(size);
+        for (int row = 0; row < rowCount; row++) {
+            if (flags[row] != 0) {
+                all.add(waypoints[row]);
+            }
+        }
+        return all;
+    }
+
+    // Follows the dimension's chain, so it only visits that dimension's rows
+    public synchronized List<Waypoint> inDimension(int handle, boolean visibleOnly) {
+        if (handle >= dimensionSizes.length || dimensionSizes[handle] == 0) {
+            return new ArrayList<>();
+        }
+        List<Waypoint> found = new ArrayList<>(dimensionSizes[handle]);
+        for (int row = dimensionFirst[handle]; row >= 0; row = nextInDimension[row]) {
+            if (!visibleOnly || (flags[row] & VISIBLE) != 0) {
+                found.add(waypoints[row]);
+            }
+        }
+        return found;
+    }
+
+    public synchronized int countInDimension(int handle) {
+        return handle >= dimensionSizes.length ? 0 : dimensionSizes[handle];
+    }
+
+    // Dimensions that have at least one waypoint
+    public synchronized List<String> dimensions() {
+        List<String> names = new ArrayList<>();
+        for (int handle = 0; handle < dimensionSizes.length; handle++) {
+            if (dimensionSizes[handle] > 0) {
+                names.add(WaypointDimension.fromHandle(handle).getId());
+            }
+        }
+        return names;
+    }
+
+    // Appends the row to the end of the dimension's chain
+    private void link(int row, int handle) {
+        if (handle >= dimensionSizes.length) {
+            int length = Math.max(handle + 1, dimensionSizes.length * 2);
+            int grownFrom = dimensionSizes.length;
+            dimensionSizes = Arrays.copyOf(dimensionSizes, length);
+            dimensionFirst = Arrays.copyOf(dimensionFirst, length);
+            dimensionLast = Arrays.copyOf(dimensionLast, length);
+            Arrays.fill(dimensionFirst, grownFrom, length, -1);
+            Arrays.fill(dimensionLast, grownFrom, length, -1);
+        }
+        int last = dimensionLast[handle];
+        previousInDimension[row] = last;
+        nextInDimension[row] = -1;
+        if (last >= 0) {
+            nextInDimension[last] = row;
+        } else {
+            dimensionFirst[handle] = row;
+        }
+        dimensionLast[handle] = row;
+        dimensionSizes[handle]++;
+    }
+
+    private void unlink(int row, int handle) {
+        int previous = previousInDimension[row];
+        int next = nextInDimension[row];
+        if (previous >= 0) {
+            nextInDimension[previous] = next;
+        } else {
+            dimensionFirst[handle] = next;
+        }
+        if (next >= 0) {
+            previousInDimension[next] = previous;
+        } else {
+            dimensionLast[handle] = previous;
+        }
+        dimensionSizes[handle]--;
+    }
+
+    private static int[] emptyChains(int length) {
+        int[] chains = new int[length];
+        Arrays.fill(chains, -1);
+        return chains;
+    }
+
+    private int insert(String id) {
+        int row;
+        if (!freeRows.isEmpty()) {
+            row = freeRows.removeInt(freeRows.size() - 1);
+        } else {
+            if (rowCount == waypoints.length) {
+                grow(rowCount + (rowCount >> 1));
+            }
+            row = rowCount++;
+        }
+        size++;
+
+        if (isUuid(id)) {
+            long high = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+            long low = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+            idHigh[row] = high;
+            idLow[row] = low;
+            flags[row] = USED;
+            if (size * 2 > slots.length) {
+                rehash(slots.length * 2);
+            }
+            slots[findSlot(high, low)] = row + 1;
+        } else {
+            flags[row] = USED | STRING_ID;
+            stringIds.put(id, row);
+        }
+        return row;
+    }
+
+    private void grow(int rows) {
+        idHigh = Arrays.copyOf(idHigh, rows);
+        idLow = Arrays.copyOf(idLow, rows);
+        x = Arrays.copyOf(x, rows);
+        y = Arrays.copyOf(y, rows);
+        z = Arrays.copyOf(z, rows);
+        dimension = Arrays.copyOf(dimension, rows);
+        group = Arrays.copyOf(group, rows);
+        icon = Arrays.copyOf(icon, rows);
+        flags = Arrays.copyOf(flags, rows);
+        nextInDimension = Arrays.copyOf(nextInDimension, rows);
+        previousInDimension = Arrays.copyOf(previousInDimension, rows);
+        waypoints = Arrays.copyOf(waypoints, rows);
+    }
+
+    // The slot holding the id, or the empty slot where it would go
+    private int findSlot(long high, long low) {
+        int mask = slots.length - 1;
+        int slot = hash(high, low) & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0 || (idHigh[entry - 1] == high && idLow[entry - 1] == low)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Shifts later entries of the probe run back, so lookups never need tombstones
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots[next] != 0) {
+            int row = slots[next] - 1;
+            int home = hash(idHigh[row], idLow[row]) & mask;
+            // Move the entry back if the hole lies between its home slot and where it sits
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int row = 0; row < rowCount; row++) {
+            if (flags[row] != 0 && (flags[row] & STRING_ID) == 0) {
+                slots[findSlot(idHigh[row], idLow[row])] = row + 1;
+            }
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // Canonical lowercase form only, so the id round-trips exactly
+    private static boolean isUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String id, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | Character.digit(id.charAt(i), 16);
+        }
+        return value;
+    }
+}
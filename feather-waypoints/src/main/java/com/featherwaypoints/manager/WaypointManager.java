@@ -1,62 +1,434 @@
 package com.featherwaypoints.manager;
 
+import com.featherwaypoints.config.WaypointConfig;
 import com.featherwaypoints.data.Waypoint;
 import com.featherwaypoints.data.WaypointDimension;
+import com.featherwaypoints.index.GroupTree;
+import com.featherwaypoints.index.ProximityHash;
+import com.featherwaypoints.index.SearchIndex;
+import com.featherwaypoints.index.WaypointIndex;
+import com.featherwaypoints.index.WaypointSnapshot;
+import com.featherwaypoints.storage.AtomicFileWriter;
+import com.featherwaypoints.storage.BinaryWaypointCodec;
+import com.featherwaypoints.storage.DuplicatePolicy;
+import com.featherwaypoints.storage.MappedWaypointStore;
+import com.featherwaypoints.storage.MemoryWaypointStore;
+import com.featherwaypoints.storage.PersistenceMode;
+import com.featherwaypoints.storage.StorageBackend;
+import com.featherwaypoints.storage.WaypointJournal;
+import com.featherwaypoints.storage.WaypointStore;
+import com.featherwaypoints.storage.WriteBehindWriter;
+import com.featherwaypoints.stats.LatencyHistogram;
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class WaypointManager {
-    private static WaypointManager instance;
-    private final Map<String, Waypoint> waypoints = new ConcurrentHashMap<>();
+    private static final long SAVE_DEBOUNCE_MILLIS = 500;
+    private static final long COMPACT_MIN_JOURNAL_BYTES = 64 * 1024;
+    private static final long COMPACT_MAX_JOURNAL_BYTES = 8 * 1024 * 1024;
+    private static final double COMPACT_JOURNAL_RATIO = 1.0;
+    // Streaming imports apply this many waypoints at a time
+    private static final int IMPORT_BATCH_SIZE = 1024;
+    private static final int EXPORT_PROGRESS_INTERVAL = 1024;
+    // Where FLAG puts near-duplicate imports, above their own group
+    private static final String DUPLICATES_GROUP = "duplicates";
+    // Per world and per server data lives in worlds/<shard>/ under the config directory
+    private static final String SHARDS_DIR = "worlds";
+    // Files of the single global store used before shards, kept as they were
+    private static final String[] GLOBAL_FILES = {
+            "waypoints.dat", "waypoints.json", "waypoints.journal", "hidden_groups.json", "beam_groups.json"
+    };
+
+    // The manager of the active shard once it has loaded; an empty, unsaved
+    // one while no world is joined or the shard is still loading. Volatile so
+    // the render thread sees a fully built manager without taking a lock.
+    private static volatile WaypointManager instance;
+    private static WaypointManager detached;
+    private static volatile String activeShard;
+    // Completes with the active shard's manager once it has loaded
+    private static volatile CompletableFuture<WaypointManager> ready = new CompletableFuture<>();
+    // Completes once the shard closed last has been saved and shut down
+    private static CompletableFuture<Void> closed = CompletableFuture.completedFuture(null);
+    private static WaypointConfig sharedConfig;
+    // One load at a time, so a shard closed mid-load is shut down before it can be opened again
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ATPoint-Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Holds the in-memory waypoints as well as indexing them; only written
+    // through hold/release below
+    private final WaypointIndex index = new WaypointIndex();
+    // By WaypointDimension handle; replaced with a larger copy as dimensions come up
+    private volatile AtomicReferenceArray<WaypointSnapshot> snapshots = new AtomicReferenceArray<>(4);
+    private final Path configDir;
+    private final Path dataDir;
     private final Path waypointsFile;
+    private final Path legacyWaypointsFile;
+    private final Path hiddenGroupsFile;
+    private final Path beamGroupsFile;
     private final Gson gson;
+    private final WaypointConfig config;
+    private final StorageBackend storageBackend;
+    private final WriteBehindWriter writer;
+    private final WaypointJournal journal;
+    // Replaces the snapshot, journal and archive below when set
+    private final WaypointStore store;
+    private final PersistenceMode persistenceMode;
+
+    // MAPPED backend: waypoints not held in the map above are served from the
+    // archive. Edited waypoints stay in memory until a compaction has written
+    // them to a new archive generation.
+    private final Object mutationLock = new Object();
+    private volatile MappedWaypointStore archive;
+    private long archiveGeneration = -1;
+    private volatile String activeDimension;
+    private final Map<String, Long> editedSequence = new ConcurrentHashMap<>();
+    private long mutationSequence;
+    private Set<String> compactionRemovals;
+    private boolean compactionCleared;
+
+    // Changes not yet handed to the writer; a null value marks a removal
+    private final Object pendingLock = new Object();
+    private Map<String, Waypoint> pendingChanges = new LinkedHashMap<>();
+    private boolean pendingClear;
+    private long snapshotBytes;
+
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LatencyHistogram saveLatency = new LatencyHistogram();
+    // Imports and exports still running; stopped before the shard closes
+    private final Map<WaypointTransfer, Thread> transfers = new ConcurrentHashMap<>();
 
-    private WaypointManager() {
-        Path configDir = FabricLoader.getInstance().getConfigDir().resolve("featherwaypoints");
+    // Standalone manager over the given directory, for running outside the
+    // game; the mod itself goes through getInstance()
+    public WaypointManager(Path configDir) {
+        this(configDir, null);
+    }
+
+    // Keeps waypoints in store rather than the built-in snapshot and journal,
+    // which leaves storage_backend and persistence_mode unused. configDir
+    // still holds the config and group lists. A null store means built-in.
+    public WaypointManager(Path configDir, WaypointStore store) {
+        this(configDir, loadConfig(configDir), configDir, store);
+    }
+
+    // Waypoints and group lists in dataDir; the config and exports stay in
+    // configDir, so every shard shares them
+    private WaypointManager(Path configDir, WaypointConfig config, Path dataDir, WaypointStore store) {
+        this.configDir = configDir;
+        this.dataDir = dataDir;
+        this.store = store;
         try {
-            Files.createDirectories(configDir);
+            Files.createDirectories(dataDir);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to create config directory", e);
+            throw new RuntimeException("Failed to create waypoint directory", e);
         }
         
-        this.waypointsFile = configDir.resolve("waypoints.json");
+        this.config = config;
+        // A store holds everything in memory, like the heap backend
+        this.storageBackend = store != null ? StorageBackend.HEAP : config.getStorageBackend();
+        this.persistenceMode = config.getPersistenceMode();
+        this.waypointsFile = dataDir.resolve("waypoints.dat");
+        this.legacyWaypointsFile = dataDir.resolve("waypoints.json");
+        this.hiddenGroupsFile = dataDir.resolve("hidden_groups.json");
+        this.beamGroupsFile = dataDir.resolve("beam_groups.json");
+        this.journal = new WaypointJournal(dataDir.resolve("waypoints.journal"));
         this.gson = new GsonBuilder()
                 .setPrettyPrinting()
                 .create();
+        this.writer = new WriteBehindWriter("ATPoint-Writer", SAVE_DEBOUNCE_MILLIS, this::writeWaypoints);
         
+        loadGroupList(hiddenGroupsFile, "hidden groups", group -> index.setGroupHidden(group, true));
+        loadGroupList(beamGroupsFile, "beam groups", group -> index.setGroupBeam(group, true));
+        long loadStart = System.nanoTime();
         loadWaypoints();
+        loadLatency.record(System.nanoTime() - loadStart);
+    }
+
+    private static WaypointConfig loadConfig(Path configDir) {
+        try {
+            Files.createDirectories(configDir);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create config directory", e);
+        }
+        WaypointConfig config = WaypointConfig.load(configDir.resolve("config.json"));
+        WaypointDimension.configure(config.getDimensionDefaults());
+        return config;
     }
 
     public static WaypointManager getInstance() {
-        if (instance == null) {
-            instance = new WaypointManager();
+        WaypointManager manager = instance;
+        if (manager == null) {
+            synchronized (WaypointManager.class) {
+                if (instance == null) {
+                    instance = detached();
+                }
+                manager = instance;
+            }
+        }
+        return manager;
+    }
+
+    // Reads the config and sets up the stand-in manager on the loader thread,
+    // so client start-up does not wait on the disk
+    public static void preload() {
+        LOADER.execute(WaypointManager::getInstance);
+    }
+
+    // Shards
+    // Each world and server keeps its waypoints in a shard of its own, with
+    // its own snapshot, journal and write-behind writer. Only the shard of the
+    // world being played is loaded: it is opened on join and flushed and
+    // dropped on disconnect, so nothing from other worlds is held or queried.
+    // Opening and closing both return straight away and do their disk work on
+    // the loader thread: a shard loads only once the one closed before it has
+    // been saved, and getInstance() switches to it once it is complete.
+    public static synchronized void openShard(String shard) {
+        String name = shardDirectoryName(shard);
+        if (name.equals(activeShard)) {
+            return;
+        }
+        closeShard();
+
+        CompletableFuture<WaypointManager> loading = new CompletableFuture<>();
+        activeShard = name;
+        ready = loading;
+        // Even if the previous shard failed to shut down cleanly
+        closed.whenCompleteAsync((result, error) -> loadShard(shard, name, loading), LOADER);
+    }
+
+    private static void loadShard(String shard, String name, CompletableFuture<WaypointManager> loading) {
+        WaypointManager manager;
+        try {
+            Path root = rootDir();
+            renameUnhashedShard(root, shard, name);
+            manager = new WaypointManager(root, sharedConfig(), root.resolve(SHARDS_DIR).resolve(name), null);
+            if (hasGlobalStore(root)) {
+                System.out.println("Waypoints from before per-world storage are still in " + root
+                        + "; /atpoint legacy import copies them into " + name);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to load waypoints for " + name + ": " + e.getMessage());
+            loading.completeExceptionally(e);
+            return;
+        }
+
+        synchronized (WaypointManager.class) {
+            // Left before it finished loading
+            if (loading.isCancelled()) {
+                manager.shutdown();
+                return;
+            }
+            instance = manager;
+        }
+        System.out.println("Loaded " + manager.getWaypointCount() + " waypoints for " + name);
+        loading.complete(manager);
+    }
+
+    // Unloads the active shard and saves it in the background, or abandons it
+    // if it is still loading; a no-op while none is open. The returned future
+    // completes once the shard is saved and shut down.
+    public static synchronized CompletableFuture<Void> closeShard() {
+        if (activeShard == null) {
+            return closed;
+        }
+        WaypointManager manager = instance;
+        instance = detached();
+        activeShard = null;
+        ready.cancel(false);
+        ready = new CompletableFuture<>();
+        // A shard still loading is shut down by its load, which runs before this
+        Runnable shutdown = manager != null && manager != instance ? manager::shutdown : () -> {
+        };
+        closed = CompletableFuture.runAsync(shutdown, LOADER);
+        return closed;
+    }
+
+    // Closes the active shard and waits for it to be saved, for when the game
+    // exits and the loader thread would otherwise be cut off
+    public static void closeShardAndWait() {
+        try {
+            closeShard().get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Failed to save waypoints before exiting: " + e);
+        }
+    }
+
+    // True once the active shard has loaded; until then getInstance() is an
+    // empty stand-in, so callers show nothing rather than wait
+    public static boolean isReady() {
+        CompletableFuture<WaypointManager> current = ready;
+        return current.isDone() && !current.isCompletedExceptionally();
+    }
+
+    // Directory name of the active shard, or null while no world is joined
+    public static String getActiveShard() {
+        return activeShard;
+    }
+
+    // A readable name with the characters that are unsafe in a file name
+    // replaced, followed by a hash of the world folder or server address as
+    // given, so that "My World", "My_World" and "my world" stay apart
+    static String shardDirectoryName(String shard) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(shard.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
-        return instance;
+        return unhashedShardDirectoryName(shard) + "-" + HexFormat.of().formatHex(digest, 0, 4);
+    }
+
+    // The directory name used before the hash was added
+    private static String unhashedShardDirectoryName(String shard) {
+        String name = shard.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "_");
+        return name.isEmpty() || name.startsWith(".") ? "_" + name : name;
+    }
+
+    // Gives a shard saved under the old unhashed name its new name. The old
+    // name may have been shared by worlds it could not tell apart; the first
+    // of them joined takes the directory over.
+    private static void renameUnhashedShard(Path root, String shard, String name) {
+        Path shards = root.resolve(SHARDS_DIR);
+        Path unhashed = shards.resolve(unhashedShardDirectoryName(shard));
+        Path hashed = shards.resolve(name);
+        if (!Files.isDirectory(unhashed) || Files.exists(hashed)) {
+            return;
+        }
+        try {
+            Files.move(unhashed, hashed);
+            System.out.println("Renamed waypoint directory " + unhashed.getFileName() + " to " + name);
+        } catch (IOException e) {
+            System.err.println("Failed to rename waypoint directory " + unhashed.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private static Path rootDir() {
+        return FabricLoader.getInstance().getConfigDir().resolve("featherwaypoints");
+    }
+
+    private static synchronized WaypointConfig sharedConfig() {
+        if (sharedConfig == null) {
+            sharedConfig = loadConfig(rootDir());
+        }
+        return sharedConfig;
+    }
+
+    // Stands in while no world is joined; keeps nothing and writes nothing
+    private static synchronized WaypointManager detached() {
+        if (detached == null) {
+            Path root = rootDir();
+            detached = new WaypointManager(root, sharedConfig(), root.resolve(SHARDS_DIR), new MemoryWaypointStore());
+        }
+        return detached;
+    }
+
+    // The global store used before shards is left where it was and never
+    // written again. Its waypoints never recorded which world they were made
+    // in, so nothing moves into a shard on its own: the player copies them
+    // into the right one with /atpoint legacy import.
+    private static boolean hasGlobalStore(Path root) {
+        for (String name : GLOBAL_FILES) {
+            if (Files.exists(root.resolve(name))) {
+                return true;
+            }
+        }
+        return MappedWaypointStore.latestGeneration(root) >= 0;
+    }
+
+    // Reads the global store the way loadWaypoints reads a shard, without
+    // converting or compacting it
+    private Collection<Waypoint> readGlobalStore(Path root) throws IOException {
+        Map<String, Waypoint> waypoints = new LinkedHashMap<>();
+        Path snapshot = root.resolve("waypoints.dat");
+        Path legacy = root.resolve("waypoints.json");
+        long generation = MappedWaypointStore.latestGeneration(root);
+        Path archive = generation >= 0 ? MappedWaypointStore.generationFile(root, generation) : null;
+        if (archive != null && (!Files.exists(snapshot)
+                || Files.getLastModifiedTime(archive).compareTo(Files.getLastModifiedTime(snapshot)) >= 0)) {
+            MappedWaypointStore.open(archive).stream(null).forEach(waypoint -> waypoints.put(waypoint.getId(), waypoint));
+        } else if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                BinaryWaypointCodec.readSnapshot(in).forEach(waypoint -> waypoints.put(waypoint.getId(), waypoint));
+            }
+        } else if (Files.exists(legacy)) {
+            try (Reader reader = Files.newBufferedReader(legacy)) {
+                List<Waypoint> loaded = gson.fromJson(reader, new TypeToken<List<Waypoint>>(){}.getType());
+                if (loaded != null) {
+                    loaded.forEach(waypoint -> waypoints.put(waypoint.getId(), waypoint));
+                }
+            } catch (JsonParseException e) {
+                throw new IOException("Invalid waypoints JSON format: " + e.getMessage(), e);
+            }
+        }
+
+        try (WaypointJournal global = new WaypointJournal(root.resolve("waypoints.journal"))) {
+            global.replay(new WaypointJournal.ReplayTarget() {
+                @Override
+                public void put(Waypoint waypoint) {
+                    waypoints.put(waypoint.getId(), waypoint);
+                }
+
+                @Override
+                public void remove(String id) {
+                    waypoints.remove(id);
+                }
+
+                @Override
+                public void clear() {
+                    waypoints.clear();
+                }
+            });
+        }
+        return waypoints.values();
     }
 
     // CRUD Operations
     public void addWaypoint(Waypoint waypoint) {
-        waypoints.put(waypoint.getId(), waypoint);
-        saveWaypoints();
+        putWaypoint(waypoint);
+        recordChange(waypoint.getId(), waypoint);
     }
 
     public void updateWaypoint(Waypoint waypoint) {
-        waypoints.put(waypoint.getId(), waypoint);
-        saveWaypoints();
+        putWaypoint(waypoint);
+        recordChange(waypoint.getId(), waypoint);
     }
 
     public void removeWaypoint(String id) {
-        waypoints.remove(id);
-        saveWaypoints();
+        if (deleteWaypoint(id)) {
+            recordChange(id, null);
+        }
     }
 
     public void removeWaypoint(Waypoint waypoint) {
@@ -64,71 +436,251 @@ public class WaypointManager {
     }
 
     public Waypoint getWaypoint(String id) {
-        return waypoints.get(id);
+        Waypoint waypoint = index.get(id);
+        MappedWaypointStore archive = this.archive;
+        if (waypoint == null && archive != null) {
+            waypoint = archive.get(id);
+        }
+        return waypoint;
     }
 
     public List<Waypoint> getAllWaypoints() {
-        return new ArrayList<>(waypoints.values());
+        if (archive == null) {
+            return index.all();
+        }
+        return allWaypoints().collect(Collectors.toList());
     }
 
     public List<Waypoint> getWaypointsInDimension(String dimension) {
-        return waypoints.values().stream()
-                .filter(waypoint -> waypoint.getDimension().equals(dimension))
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            return new ArrayList<>();
+        }
+        if (archive == null) {
+            return new ArrayList<>(index.inDimension(dim));
+        }
+        return waypointsIn(dim)
                 .collect(Collectors.toList());
     }
 
+    // Snapshots
+    // Readers on the render and GUI threads share one immutable snapshot per
+    // dimension. It is rebuilt at most once per version, on the first read
+    // after a change; until then getSnapshot is an array read and a compare.
+    // Dimensions no waypoint was ever stored in get an empty snapshot.
+    public WaypointSnapshot getSnapshot(String dimension) {
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            Waypoint[] none = new Waypoint[0];
+            return new WaypointSnapshot(dimension, 0, none, none, none);
+        }
+        return getSnapshot(dim);
+    }
+
+    public WaypointSnapshot getSnapshot(WaypointDimension dimension) {
+        AtomicReferenceArray<WaypointSnapshot> cached = snapshots;
+        int handle = dimension.getHandle();
+        WaypointSnapshot snapshot = handle < cached.length() ? cached.get(handle) : null;
+        if (snapshot != null && snapshot.getVersion() == index.version(dimension)) {
+            return snapshot;
+        }
+
+        synchronized (mutationLock) {
+            long version = index.version(dimension);
+            if (handle >= snapshots.length()) {
+                AtomicReferenceArray<WaypointSnapshot> grown =
+                        new AtomicReferenceArray<>(Math.max(handle + 1, WaypointDimension.count()));
+                for (int i = 0; i < snapshots.length(); i++) {
+                    grown.set(i, snapshots.get(i));
+                }
+                snapshots = grown;
+            }
+            snapshot = snapshots.get(handle);
+            if (snapshot == null || snapshot.getVersion() != version) {
+                Waypoint[] copies = waypointsIn(dimension).map(Waypoint::copy).toArray(Waypoint[]::new);
+                Waypoint[] shown = Arrays.stream(copies).filter(this::isShown).toArray(Waypoint[]::new);
+                Waypoint[] beams = Arrays.stream(shown).filter(this::hasBeam).toArray(Waypoint[]::new);
+                snapshot = new WaypointSnapshot(dimension.getId(), version, copies, shown, beams);
+                snapshots.set(handle, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    // Cheap check for readers that cache work derived from a snapshot
+    public long getVersion(String dimension) {
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        return dim != null ? getVersion(dim) : 0;
+    }
+
+    public long getVersion(WaypointDimension dimension) {
+        return index.version(dimension);
+    }
+
+    // A waypoint is shown if it is visible itself and none of its groups are hidden
+    public boolean isShown(Waypoint waypoint) {
+        return waypoint.isVisible() && !index.groups().isHidden(waypoint.getGroup());
+    }
+
+    // A waypoint gets a beam if it asks for one or any of its groups has beams on
+    public boolean hasBeam(Waypoint waypoint) {
+        return waypoint.hasBeam() || index.groups().hasBeam(waypoint.getGroup());
+    }
+
     public List<Waypoint> getVisibleWaypoints() {
-        return waypoints.values().stream()
-                .filter(Waypoint::isVisible)
+        return allWaypoints()
+                .filter(this::isShown)
                 .collect(Collectors.toList());
     }
 
     public List<Waypoint> getVisibleWaypointsInDimension(String dimension) {
-        return waypoints.values().stream()
-                .filter(waypoint -> waypoint.getDimension().equals(dimension) && waypoint.isVisible())
-                .collect(Collectors.toList());
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            return new ArrayList<>();
+        }
+        List<Waypoint> visible = new ArrayList<>(index.visibleInDimension(dim));
+        visible.removeIf(waypoint -> index.groups().isHidden(waypoint.getGroup()));
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            archive.stream(dimension)
+                    .filter(this::isShown)
+                    .forEach(visible::add);
+        }
+        return visible;
     }
 
     // Search functionality
+    // Results are ranked exact, prefix, then substring matches on the name,
+    // then the same on the group, then (if enabled) near misses. A query that
+    // names the dimension itself still lists the rest of that dimension last.
     public List<Waypoint> searchWaypoints(String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllWaypoints();
         }
-        
-        String lowerQuery = query.toLowerCase().trim();
-        return waypoints.values().stream()
-                .filter(waypoint -> 
-                    waypoint.getName().toLowerCase().contains(lowerQuery) ||
-                    (waypoint.getGroup() != null && waypoint.getGroup().toLowerCase().contains(lowerQuery)) ||
-                    waypoint.getDimension().toLowerCase().contains(lowerQuery)
-                )
-                .collect(Collectors.toList());
+        return rankedSearch(query, null);
     }
 
     public List<Waypoint> searchWaypointsInDimension(String query, String dimension) {
-        return searchWaypoints(query).stream()
-                .filter(waypoint -> waypoint.getDimension().equals(dimension))
-                .collect(Collectors.toList());
+        if (query == null || query.trim().isEmpty()) {
+            return getWaypointsInDimension(dimension);
+        }
+        return rankedSearch(query, dimension);
+    }
+
+    private Set<String> getDimensions() {
+        Set<String> dimensions = new HashSet<>(index.dimensions());
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            dimensions.addAll(archive.dimensions());
+        }
+        return dimensions;
+    }
+
+    private List<Waypoint> rankedSearch(String query, String dimension) {
+        WaypointDimension dim = dimension != null ? WaypointDimension.fromId(dimension) : null;
+        if (dimension != null && dim == null) {
+            return new ArrayList<>();
+        }
+        String normalized = SearchIndex.normalize(query);
+        List<Waypoint> results = index.search().search(normalized, dim, config.isSearchTypoTolerance());
+
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            List<Waypoint> archived = archive.stream(dimension)
+                    .filter(waypoint -> SearchIndex.rank(normalized, waypoint) >= 0)
+                    .collect(Collectors.toList());
+            if (!archived.isEmpty()) {
+                results.addAll(archived);
+                // Typo matches are not ranked for archived waypoints, so keep them last
+                results.sort(Comparator.comparingInt(waypoint -> {
+                    int rank = SearchIndex.rank(normalized, waypoint);
+                    return rank >= 0 ? rank : SearchIndex.TYPO;
+                }));
+            }
+        }
+
+        Set<String> dimensions = dimension != null ? Set.of(dimension) : getDimensions();
+        for (String candidate : dimensions) {
+            if (candidate.toLowerCase(Locale.ROOT).contains(normalized)) {
+                Set<String> listed = results.stream().map(Waypoint::getId).collect(Collectors.toSet());
+                waypointsIn(candidate)
+                        .filter(waypoint -> !listed.contains(waypoint.getId()))
+                        .forEach(results::add);
+            }
+        }
+        return results;
     }
 
     // Group management
+    // Groups nest with '/' (e.g. "base/farms/iron"). Counts, bounds and hidden
+    // flags cover whole subtrees and are kept up to date by the index. With the
+    // MAPPED backend they only cover waypoints currently held in memory.
     public Set<String> getAllGroups() {
-        return waypoints.values().stream()
-                .map(Waypoint::getGroup)
-                .filter(Objects::nonNull)
-                .filter(group -> !group.trim().isEmpty())
-                .collect(Collectors.toSet());
+        Set<String> groups = new TreeSet<>(index.groups().paths());
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            archive.stream(null)
+                    .map(waypoint -> GroupTree.normalize(waypoint.getGroup()))
+                    .filter(Objects::nonNull)
+                    .forEach(path -> {
+                        // Parent groups are groups too
+                        for (int cut = path.length(); cut > 0; cut = path.lastIndexOf(GroupTree.SEPARATOR, cut - 1)) {
+                            groups.add(path.substring(0, cut));
+                        }
+                    });
+        }
+        return groups;
     }
 
+    // Waypoints directly in the group, not in its subgroups
     public List<Waypoint> getWaypointsInGroup(String group) {
-        return waypoints.values().stream()
-                .filter(waypoint -> Objects.equals(waypoint.getGroup(), group))
-                .collect(Collectors.toList());
+        String path = GroupTree.normalize(group);
+        List<Waypoint> members = path == null
+                ? index.all().stream().filter(waypoint -> GroupTree.normalize(waypoint.getGroup()) == null).collect(Collectors.toList())
+                : index.groups().members(path, false);
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            archive.stream(null)
+                    .filter(waypoint -> Objects.equals(GroupTree.normalize(waypoint.getGroup()), path))
+                    .forEach(members::add);
+        }
+        return members;
+    }
+
+    // Top-level groups when group is null
+    public List<String> getChildGroups(String group) {
+        return index.groups().children(group);
+    }
+
+    public GroupTree.GroupSummary getGroupSummary(String group) {
+        return index.groups().summary(group);
+    }
+
+    public boolean isGroupHidden(String group) {
+        return index.groups().isHidden(group);
+    }
+
+    // Hides or shows every waypoint in the group and its subgroups without
+    // touching the waypoints themselves
+    public void setGroupHidden(String group, boolean hidden) {
+        index.setGroupHidden(group, hidden);
+        saveGroupList(hiddenGroupsFile, "hidden groups", index.groups().hiddenGroups());
+    }
+
+    public boolean isGroupBeam(String group) {
+        return index.groups().hasBeam(group);
+    }
+
+    // Turns beams on or off for every waypoint in the group and its subgroups;
+    // waypoints with their own beam keep it either way
+    public void setGroupBeam(String group, boolean beam) {
+        index.setGroupBeam(group, beam);
+        saveGroupList(beamGroupsFile, "beam groups", index.groups().beamGroups());
     }
 
     // Utility methods
     public Waypoint createWaypoint(String name, double x, double y, double z, String dimension) {
-        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        WaypointDimension dim = WaypointDimension.register(dimension);
         return new Waypoint(name, x, y, z, dimension, dim.getDefaultColor(), dim.getDefaultIcon(), null);
     }
 
@@ -136,29 +688,328 @@ public class WaypointManager {
         return new Waypoint(name, x, y, z, dimension, color, icon, group);
     }
 
+    // Spatial queries: in-memory waypoints come from the per-dimension grid,
+    // anything still in the mapped archive is checked separately.
     public List<Waypoint> getNearestWaypoints(double x, double y, double z, String dimension, int limit) {
-        return waypoints.values().stream()
-                .filter(waypoint -> waypoint.getDimension().equals(dimension))
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            return new ArrayList<>();
+        }
+        List<Waypoint> nearest = index.spatial(dim).nearest(x, y, z, limit, null);
+        MappedWaypointStore archive = this.archive;
+        if (archive == null || archive.size(dimension) == 0) {
+            return nearest;
+        }
+        return Stream.concat(nearest.stream(), archive.stream(dimension))
                 .sorted((w1, w2) -> Double.compare(w1.getDistanceTo(x, y, z), w2.getDistanceTo(x, y, z)))
                 .limit(limit)
                 .collect(Collectors.toList());
     }
 
+    public List<Waypoint> getWaypointsWithinRadius(double x, double y, double z, String dimension, double radius) {
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            return new ArrayList<>();
+        }
+        List<Waypoint> within = index.spatial(dim).withinRadius(x, y, z, radius, null);
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            archive.stream(dimension)
+                    .filter(waypoint -> waypoint.getDistanceTo(x, y, z) <= radius)
+                    .forEach(within::add);
+        }
+        return within;
+    }
+
+    public List<Waypoint> getWaypointsInBox(String dimension, double minX, double minY, double minZ,
+                                            double maxX, double maxY, double maxZ) {
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        if (dim == null) {
+            return new ArrayList<>();
+        }
+        List<Waypoint> inside = index.spatial(dim).withinBox(minX, minY, minZ, maxX, maxY, maxZ, null);
+        MappedWaypointStore archive = this.archive;
+        if (archive != null) {
+            archive.stream(dimension)
+                    .filter(waypoint -> waypoint.getX() >= minX && waypoint.getX() <= maxX
+                            && waypoint.getY() >= minY && waypoint.getY() <= maxY
+                            && waypoint.getZ() >= minZ && waypoint.getZ() <= maxZ)
+                    .forEach(inside::add);
+        }
+        return inside;
+    }
+
+    // Every waypoint, including those only held by the mapped archive
+    private Stream<Waypoint> allWaypoints() {
+        MappedWaypointStore archive = this.archive;
+        Stream<Waypoint> inMemory = index.all().stream();
+        return archive == null ? inMemory : Stream.concat(inMemory, archive.stream(null));
+    }
+
+    private Stream<Waypoint> waypointsIn(String dimension) {
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        return dim != null ? waypointsIn(dim) : Stream.empty();
+    }
+
+    private Stream<Waypoint> waypointsIn(WaypointDimension dimension) {
+        MappedWaypointStore archive = this.archive;
+        Stream<Waypoint> inMemory = index.inDimension(dimension).stream();
+        return archive == null ? inMemory : Stream.concat(inMemory, archive.stream(dimension.getId()));
+    }
+
+    // The only places that write to the index, so writers never interleave.
+    // hold() also re-indexes a waypoint that was changed in place through its
+    // setters.
+    private void hold(Waypoint waypoint) {
+        synchronized (mutationLock) {
+            index.put(waypoint);
+        }
+    }
+
+    private boolean release(String id) {
+        synchronized (mutationLock) {
+            return index.remove(id) != null;
+        }
+    }
+
+    private void releaseAll() {
+        synchronized (mutationLock) {
+            index.clear();
+        }
+    }
+
+    private void putWaypoint(Waypoint waypoint) {
+        synchronized (mutationLock) {
+            hold(waypoint);
+            if (storageBackend == StorageBackend.MAPPED) {
+                editedSequence.put(waypoint.getId(), ++mutationSequence);
+                if (archive != null && archive.shadow(waypoint.getId())) {
+                    // The archived copy may have been in another dimension
+                    index.invalidateAll();
+                }
+            }
+        }
+    }
+
+    private boolean deleteWaypoint(String id) {
+        synchronized (mutationLock) {
+            boolean removed = release(id);
+            if (archive != null && archive.shadow(id)) {
+                index.invalidateAll();
+                removed = true;
+            }
+            editedSequence.remove(id);
+            if (compactionRemovals != null) {
+                compactionRemovals.add(id);
+            }
+            return removed;
+        }
+    }
+
+    private void deleteAllWaypoints() {
+        synchronized (mutationLock) {
+            releaseAll();
+            editedSequence.clear();
+            compactionCleared = true;
+            if (archive != null) {
+                archive.shadowAll();
+                index.invalidateAll();
+            }
+        }
+    }
+
+    // MAPPED backend: keeps the given dimension in memory and hands the unedited
+    // waypoints of the previously active dimension back to the archive.
+    public void setActiveDimension(String dimension) {
+        if (storageBackend != StorageBackend.MAPPED || Objects.equals(dimension, activeDimension)) {
+            return;
+        }
+
+        synchronized (mutationLock) {
+            String previous = activeDimension;
+            activeDimension = dimension;
+            MappedWaypointStore archive = this.archive;
+            if (archive == null) {
+                return;
+            }
+
+            if (previous != null) {
+                evictToArchive(previous);
+            }
+            if (dimension != null) {
+                archive.promote(dimension).forEach(this::hold);
+            }
+        }
+    }
+
+    // Drops unedited waypoints of a dimension (or all dimensions when null)
+    // from memory; the archive serves them again from then on.
+    private void evictToArchive(String dimension) {
+        synchronized (mutationLock) {
+            WaypointDimension dim = WaypointDimension.fromId(dimension);
+            List<Waypoint> held = dimension == null ? index.all()
+                    : dim != null ? index.inDimension(dim) : List.of();
+            for (Waypoint waypoint : held) {
+                if (!editedSequence.containsKey(waypoint.getId()) && archive.contains(waypoint.getId())) {
+                    index.remove(waypoint.getId());
+                    archive.unshadow(waypoint.getId());
+                }
+            }
+        }
+    }
+
     // File operations
+    // The journal always applies to whichever snapshot was compacted last, so
+    // load the newest of waypoints.dat and the latest archive generation and
+    // convert it if it does not match the configured backend.
     private void loadWaypoints() {
+        if (store != null) {
+            try {
+                store.load(this::hold);
+            } catch (IOException e) {
+                System.err.println("Failed to load waypoints: " + e.getMessage());
+            }
+            return;
+        }
+
+        long generation = MappedWaypointStore.latestGeneration(dataDir);
+        archiveGeneration = generation;
+        boolean archiveIsNewest = generation >= 0 && isNewerThanSnapshot(MappedWaypointStore.generationFile(dataDir, generation));
+        boolean migrating = false;
+
+        if (archiveIsNewest && openArchive(generation)) {
+            if (storageBackend == StorageBackend.MAPPED) {
+                replayJournal();
+                return;
+            }
+            // HEAP backend after running on MAPPED: read the archive back in
+            archive.stream(null).forEach(this::hold);
+            archive = null;
+        } else if (!Files.exists(waypointsFile) && Files.exists(legacyWaypointsFile)) {
+            migrating = true;
+            loadLegacySnapshot();
+        } else {
+            loadSnapshot();
+        }
+        replayJournal();
+
+        if (migrating || archiveIsNewest || storageBackend == StorageBackend.MAPPED) {
+            try {
+                compact();
+                if (migrating) {
+                    // The JSON file is kept as a backup rather than deleted
+                    Files.move(legacyWaypointsFile, legacyWaypointsFile.resolveSibling("waypoints.json.bak"),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    System.out.println("Migrated " + getWaypointCount() + " waypoints from waypoints.json");
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to convert waypoint storage: " + e.getMessage());
+            }
+        }
+        if (archive != null) {
+            evictToArchive(null);
+        }
+    }
+
+    // Group flags are kept as JSON lists of group paths
+    private void loadGroupList(Path file, String description, Consumer<String> apply) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            List<String> groups = gson.fromJson(reader, new TypeToken<List<String>>(){}.getType());
+            if (groups != null) {
+                groups.forEach(apply);
+            }
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Failed to load " + description + ": " + e.getMessage());
+        }
+    }
+
+    private void saveGroupList(Path file, String description, Set<String> groups) {
+        List<String> list = new ArrayList<>(groups);
+        try {
+            AtomicFileWriter.write(file, out -> {
+                Writer fileWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                gson.toJson(list, fileWriter);
+                fileWriter.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to save " + description + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isNewerThanSnapshot(Path file) {
+        try {
+            return !Files.exists(waypointsFile)
+                    || Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(waypointsFile)) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean openArchive(long generation) {
+        Path file = MappedWaypointStore.generationFile(dataDir, generation);
+        try {
+            archive = MappedWaypointStore.open(file);
+            archiveGeneration = generation;
+            snapshotBytes = Files.size(file);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to map waypoints: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void replayJournal() {
+        try {
+            int replayed = journal.replay(new WaypointJournal.ReplayTarget() {
+                @Override
+                public void put(Waypoint waypoint) {
+                    putWaypoint(waypoint);
+                }
+
+                @Override
+                public void remove(String id) {
+                    deleteWaypoint(id);
+                }
+
+                @Override
+                public void clear() {
+                    deleteAllWaypoints();
+                }
+            });
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " waypoint journal records");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to replay waypoint journal: " + e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() {
         if (!Files.exists(waypointsFile)) {
             return;
         }
 
-        try (FileReader reader = new FileReader(waypointsFile.toFile())) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(waypointsFile)))) {
+            snapshotBytes = Files.size(waypointsFile);
+            releaseAll();
+            BinaryWaypointCodec.readSnapshot(in).forEach(this::hold);
+        } catch (IOException e) {
+            System.err.println("Failed to load waypoints: " + e.getMessage());
+        }
+    }
+
+    // Reads waypoints.json written by earlier versions
+    private void loadLegacySnapshot() {
+        try (FileReader reader = new FileReader(legacyWaypointsFile.toFile())) {
             Type listType = new TypeToken<List<Waypoint>>(){}.getType();
             List<Waypoint> loadedWaypoints = gson.fromJson(reader, listType);
             
             if (loadedWaypoints != null) {
-                waypoints.clear();
-                for (Waypoint waypoint : loadedWaypoints) {
-                    waypoints.put(waypoint.getId(), waypoint);
-                }
+                releaseAll();
+                loadedWaypoints.forEach(this::hold);
             }
         } catch (IOException e) {
             System.err.println("Failed to load waypoints: " + e.getMessage());
@@ -167,15 +1018,203 @@ public class WaypointManager {
         }
     }
 
-    private void saveWaypoints() {
-        try (FileWriter writer = new FileWriter(waypointsFile.toFile())) {
-            List<Waypoint> waypointList = new ArrayList<>(waypoints.values());
-            gson.toJson(waypointList, writer);
+    private void recordChange(String id, Waypoint waypoint) {
+        synchronized (pendingLock) {
+            pendingChanges.put(id, waypoint);
+        }
+        writer.markDirty();
+    }
+
+    private void recordClear() {
+        synchronized (pendingLock) {
+            pendingChanges.clear();
+            pendingClear = true;
+        }
+        writer.markDirty();
+    }
+
+    // Runs on the writer thread
+    private void writeWaypoints() throws IOException {
+        long start = System.nanoTime();
+        Map<String, Waypoint> changes;
+        boolean clear;
+        synchronized (pendingLock) {
+            changes = pendingChanges;
+            clear = pendingClear;
+            pendingChanges = new LinkedHashMap<>();
+            pendingClear = false;
+        }
+
+        try {
+            if (store != null) {
+                if (clear || !changes.isEmpty()) {
+                    store.persist(clear, changes, index::all);
+                }
+            } else if (persistenceMode == PersistenceMode.JOURNAL) {
+                if (clear || !changes.isEmpty()) {
+                    journal.append(clear, changes);
+                }
+                if (shouldCompact(journal.size())) {
+                    compact();
+                }
+            } else {
+                compact();
+            }
+        } catch (Exception e) {
+            // Hand the batch back so the retry does not lose it
+            synchronized (pendingLock) {
+                if (!pendingClear) {
+                    changes.putAll(pendingChanges);
+                    pendingChanges = changes;
+                    pendingClear = clear;
+                }
+            }
+            throw e;
+        }
+        saveLatency.record(System.nanoTime() - start);
+    }
+
+    private boolean shouldCompact(long journalBytes) {
+        if (journalBytes < COMPACT_MIN_JOURNAL_BYTES) {
+            return false;
+        }
+        return journalBytes >= COMPACT_MAX_JOURNAL_BYTES || journalBytes >= snapshotBytes * COMPACT_JOURNAL_RATIO;
+    }
+
+    // Writes a full snapshot; once it is in place the journal is redundant.
+    // Records appended after the snapshot was taken replay idempotently over it.
+    private void compact() throws IOException {
+        if (storageBackend == StorageBackend.MAPPED) {
+            compactArchive();
+        } else {
+            List<Waypoint> waypointList = index.all();
+            AtomicFileWriter.write(waypointsFile, out -> {
+                DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+                BinaryWaypointCodec.writeSnapshot(dataOut, waypointList);
+                dataOut.flush();
+            });
+            snapshotBytes = Files.size(waypointsFile);
+        }
+        journal.truncate();
+    }
+
+    // Merges the live archive records and the in-memory waypoints into a new
+    // archive generation without materializing the archive.
+    private void compactArchive() throws IOException {
+        List<Waypoint> inMemory;
+        MappedWaypointStore previous;
+        BitSet skip;
+        long sequence;
+        synchronized (mutationLock) {
+            inMemory = index.all();
+            previous = archive;
+            skip = previous != null ? previous.shadowedSnapshot() : new BitSet();
+            sequence = mutationSequence;
+            compactionRemovals = new HashSet<>();
+            compactionCleared = false;
+        }
+
+        long generation = archiveGeneration + 1;
+        Path file = MappedWaypointStore.generationFile(dataDir, generation);
+        try {
+            AtomicFileWriter.write(file, out -> MappedWaypointStore.write(out, previous, skip, inMemory));
+            MappedWaypointStore next = MappedWaypointStore.open(file);
+
+            synchronized (mutationLock) {
+                // Changes made while the file was written still win over it
+                if (compactionCleared) {
+                    next.shadowAll();
+                } else {
+                    for (String id : compactionRemovals) {
+                        next.shadow(id);
+                    }
+                }
+                for (Waypoint waypoint : index.all()) {
+                    next.shadow(waypoint.getId());
+                }
+                archive = next;
+                archiveGeneration = generation;
+                editedSequence.values().removeIf(edited -> edited <= sequence);
+            }
+        } finally {
+            synchronized (mutationLock) {
+                compactionRemovals = null;
+            }
+        }
+
+        snapshotBytes = Files.size(file);
+        MappedWaypointStore.deleteOlderGenerations(dataDir, generation);
+    }
+
+    // Persistence control
+    public void flush() {
+        writer.flush();
+    }
+
+    public boolean awaitPersisted(long timeout, TimeUnit unit) throws InterruptedException {
+        return writer.awaitPersisted(timeout, unit);
+    }
+
+    public void shutdown() {
+        // A cancelled import keeps the batches it applied, so let it finish those first
+        transfers.keySet().forEach(WaypointTransfer::cancel);
+        for (Thread thread : transfers.values()) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        writer.close();
+        try {
+            journal.close();
         } catch (IOException e) {
-            System.err.println("Failed to save waypoints: " + e.getMessage());
+            System.err.println("Failed to close waypoint journal: " + e.getMessage());
+        }
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close waypoint store: " + e.getMessage());
+            }
         }
     }
 
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public long getJournalBytesWritten() {
+        return journal.getBytesWritten();
+    }
+
+    // Diagnostics; save covers each write-behind batch, load the start-up read
+    public LatencyHistogram getSaveLatency() {
+        return saveLatency;
+    }
+
+    public LatencyHistogram getLoadLatency() {
+        return loadLatency;
+    }
+
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    // Waypoints held as objects, as opposed to served from the mapped archive
+    public int getHeldWaypointCount() {
+        return index.size();
+    }
+
+    public int getDimensionCount() {
+        return index.dimensions().size();
+    }
+
+    public int getSearchIndexSize() {
+        return index.search().size();
+    }
+
     // Import/Export functionality
     public void importWaypoints(String jsonData) throws JsonSyntaxException {
         Type listType = new TypeToken<List<Waypoint>>(){}.getType();
@@ -183,29 +1222,305 @@ public class WaypointManager {
         
         if (importedWaypoints != null) {
             for (Waypoint waypoint : importedWaypoints) {
-                waypoints.put(waypoint.getId(), waypoint);
+                // Same checks as the streaming import
+                if (waypoint == null || waypoint.getId() == null || waypoint.getName() == null
+                        || waypoint.getDimension() == null) {
+                    continue;
+                }
+                putWaypoint(waypoint);
+                recordChange(waypoint.getId(), waypoint);
             }
-            saveWaypoints();
         }
     }
 
     public String exportWaypoints() {
-        List<Waypoint> waypointList = new ArrayList<>(waypoints.values());
+        List<Waypoint> waypointList = getAllWaypoints();
         return gson.toJson(waypointList);
     }
 
+    // Streaming variants of the two above, for files of any size. Each runs
+    // on its own background thread and reads or writes one waypoint at a
+    // time, so the document is never held in memory as a whole. Imports are
+    // applied in batches; exports are written atomically, so a failed or
+    // cancelled export leaves any existing file untouched.
+    public WaypointTransfer importWaypointsAsync(Path file) {
+        return importWaypointsAsync(file, config.getImportDuplicates());
+    }
+
+    // policy applies to waypoints within import_duplicate_radius of one
+    // already there or imported earlier in the same file
+    public WaypointTransfer importWaypointsAsync(Path file, DuplicatePolicy policy) {
+        WaypointTransfer transfer = new WaypointTransfer(WaypointTransfer.Kind.IMPORT);
+        startTransfer("ATPoint-Import", transfer, () -> streamImport(file, policy, transfer));
+        return transfer;
+    }
+
+    // Copies the waypoints and group flags kept from before per-world storage
+    // into this shard; the old store itself is left as it is
+    public WaypointTransfer importGlobalStoreAsync(DuplicatePolicy policy) {
+        WaypointTransfer transfer = new WaypointTransfer(WaypointTransfer.Kind.IMPORT);
+        startTransfer("ATPoint-Import", transfer, () -> globalImport(policy, transfer));
+        return transfer;
+    }
+
+    public static boolean hasGlobalStore() {
+        return hasGlobalStore(rootDir());
+    }
+
+    public WaypointTransfer exportWaypointsAsync(Path file) {
+        WaypointTransfer transfer = new WaypointTransfer(WaypointTransfer.Kind.EXPORT);
+        startTransfer("ATPoint-Export", transfer, () -> streamExport(file, transfer));
+        return transfer;
+    }
+
+    // Where the /atpoint import and export commands read and write
+    public Path getExportDirectory() {
+        return configDir.resolve("exports");
+    }
+
+    private interface TransferTask {
+        void run() throws IOException;
+    }
+
+    private void startTransfer(String threadName, WaypointTransfer transfer, TransferTask task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+                if (transfer.isCancelled()) {
+                    transfer.fail(new CancellationException("Waypoint transfer cancelled"));
+                } else {
+                    transfer.complete();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (transfer.isCancelled()) {
+                    transfer.fail(new CancellationException("Waypoint transfer cancelled"));
+                } else {
+                    System.err.println("Waypoint transfer failed: " + e.getMessage());
+                    transfer.fail(e);
+                }
+            } finally {
+                transfers.remove(transfer);
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        transfers.put(transfer, thread);
+        thread.start();
+    }
+
+    // Counts and duplicate lookup for one streaming import
+    private static final class ImportState {
+        final DuplicatePolicy policy;
+        // Every waypoint there or imported so far; null when duplicates are kept
+        final ProximityHash nearby;
+        int imported;
+        int skipped;
+        int duplicates;
+
+        ImportState(DuplicatePolicy policy, ProximityHash nearby) {
+            this.policy = policy;
+            this.nearby = nearby;
+        }
+    }
+
+    private ImportState startImport(DuplicatePolicy policy) {
+        ProximityHash nearby = null;
+        if (policy != DuplicatePolicy.KEEP) {
+            nearby = new ProximityHash(config.getImportDuplicateRadius(), config.isImportDuplicateMatchNames());
+            allWaypoints().forEach(nearby::add);
+        }
+        return new ImportState(policy, nearby);
+    }
+
+    private void streamImport(Path file, DuplicatePolicy policy, WaypointTransfer transfer) throws IOException {
+        ImportState state = startImport(policy);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             JsonReader reader = new JsonReader(new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8)))) {
+            double size = Math.max(1, channel.size());
+            List<Waypoint> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            reader.beginArray();
+            while (reader.hasNext() && !transfer.isCancelled()) {
+                Waypoint waypoint = gson.fromJson(reader, Waypoint.class);
+                if (waypoint == null || waypoint.getId() == null || waypoint.getName() == null
+                        || waypoint.getDimension() == null) {
+                    state.skipped++;
+                } else {
+                    batch.add(waypoint);
+                }
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    applyImportBatch(batch, state);
+                    transfer.update(state.imported, state.skipped, state.duplicates, channel.position() / size);
+                }
+            }
+            if (!transfer.isCancelled()) {
+                applyImportBatch(batch, state);
+                reader.endArray();
+            }
+            transfer.update(state.imported, state.skipped, state.duplicates, channel.position() / size);
+        }
+        flush();
+    }
+
+    private void globalImport(DuplicatePolicy policy, WaypointTransfer transfer) throws IOException {
+        if (!hasGlobalStore(configDir)) {
+            throw new NoSuchFileException("No waypoints from before per-world storage");
+        }
+        Collection<Waypoint> waypoints = readGlobalStore(configDir);
+        ImportState state = startImport(policy);
+        double size = Math.max(1, waypoints.size());
+        List<Waypoint> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int read = 0;
+        for (Waypoint waypoint : waypoints) {
+            if (transfer.isCancelled()) {
+                break;
+            }
+            read++;
+            if (waypoint.getName() == null || waypoint.getDimension() == null) {
+                state.skipped++;
+            } else {
+                batch.add(waypoint);
+            }
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                applyImportBatch(batch, state);
+                transfer.update(state.imported, state.skipped, state.duplicates, read / size);
+            }
+        }
+        if (!transfer.isCancelled()) {
+            applyImportBatch(batch, state);
+            loadGroupList(configDir.resolve("hidden_groups.json"), "hidden groups", group -> setGroupHidden(group, true));
+            loadGroupList(configDir.resolve("beam_groups.json"), "beam groups", group -> setGroupBeam(group, true));
+        }
+        transfer.update(state.imported, state.skipped, state.duplicates, read / size);
+        flush();
+    }
+
+    // Readers see each batch appear at once rather than one waypoint at a time
+    private void applyImportBatch(List<Waypoint> batch, ImportState state) {
+        List<Waypoint> changed = new ArrayList<>(batch.size());
+        synchronized (mutationLock) {
+            for (Waypoint waypoint : batch) {
+                Waypoint resolved = resolveImport(waypoint, state);
+                if (resolved != null) {
+                    putWaypoint(resolved);
+                    changed.add(resolved);
+                }
+            }
+        }
+        synchronized (pendingLock) {
+            for (Waypoint waypoint : changed) {
+                pendingChanges.put(waypoint.getId(), waypoint);
+            }
+        }
+        writer.markDirty();
+        batch.clear();
+    }
+
+    // What to store for an imported waypoint: itself, the existing waypoint
+    // it was merged into, or null to leave it out. A waypoint with a known id
+    // replaces the old one, as it always has.
+    private Waypoint resolveImport(Waypoint imported, ImportState state) {
+        ProximityHash nearby = state.nearby;
+        if (nearby == null) {
+            state.imported++;
+            return imported;
+        }
+        Waypoint existing = getWaypoint(imported.getId());
+        if (existing != null) {
+            nearby.remove(existing);
+            nearby.add(imported);
+            state.imported++;
+            return imported;
+        }
+        Waypoint match = nearby.findNear(imported);
+        if (match == null) {
+            nearby.add(imported);
+            state.imported++;
+            return imported;
+        }
+
+        state.duplicates++;
+        switch (state.policy) {
+            case SKIP:
+                return null;
+            case MERGE:
+                Waypoint merged = mergeDuplicate(match, imported);
+                nearby.remove(match);
+                nearby.add(merged);
+                return merged;
+            default:
+                String group = imported.getGroup();
+                imported.setGroup(group == null || group.isEmpty() ? DUPLICATES_GROUP : DUPLICATES_GROUP + "/" + group);
+                nearby.add(imported);
+                state.imported++;
+                return imported;
+        }
+    }
+
+    // A copy of the existing waypoint taking over what the duplicate adds to
+    // it. The existing one may be being saved right now, so it is left as is.
+    private static Waypoint mergeDuplicate(Waypoint existing, Waypoint duplicate) {
+        Waypoint merged = existing.copy();
+        String group = merged.getGroup();
+        if ((group == null || group.isEmpty()) && duplicate.getGroup() != null) {
+            merged.setGroup(duplicate.getGroup());
+        }
+        merged.setBeam(merged.hasBeam() || duplicate.hasBeam());
+        merged.setVisible(merged.isVisible() || duplicate.isVisible());
+        return merged;
+    }
+
+    private void streamExport(Path file, WaypointTransfer transfer) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        double total = Math.max(1, getWaypointCount());
+        AtomicFileWriter.write(file, out -> {
+            JsonWriter jsonWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            jsonWriter.setIndent("  ");
+            jsonWriter.beginArray();
+            int written = 0;
+            Iterator<Waypoint> iterator = allWaypoints().iterator();
+            while (iterator.hasNext()) {
+                if (transfer.isCancelled()) {
+                    throw new InterruptedIOException("Export cancelled");
+                }
+                gson.toJson(iterator.next(), Waypoint.class, jsonWriter);
+                written++;
+                if (written % EXPORT_PROGRESS_INTERVAL == 0) {
+                    transfer.update(written, 0, 0, written / total);
+                }
+            }
+            jsonWriter.endArray();
+            // Not closed; the file writer still has to sync it
+            jsonWriter.flush();
+            transfer.update(written, 0, 0, 1);
+        });
+    }
+
     public void clearAllWaypoints() {
-        waypoints.clear();
-        saveWaypoints();
+        deleteAllWaypoints();
+        recordClear();
     }
 
     public int getWaypointCount() {
-        return waypoints.size();
+        MappedWaypointStore archive = this.archive;
+        return index.size() + (archive != null ? archive.size() : 0);
     }
 
     public int getWaypointCountInDimension(String dimension) {
-        return (int) waypoints.values().stream()
-                .filter(waypoint -> waypoint.getDimension().equals(dimension))
-                .count();
+        MappedWaypointStore archive = this.archive;
+        WaypointDimension dim = WaypointDimension.fromId(dimension);
+        return dim != null ? index.countInDimension(dim) + (archive != null ? archive.size(dimension) : 0) : 0;
+    }
+
+    public WaypointConfig getConfig() {
+        return config;
+    }
+
+    public void saveConfig() {
+        config.save(configDir.resolve("config.json"));
+    }
+
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
     }
 }
@@ -0,0 +1,82 @@
+package com.featherwaypoints.manager;
+
+import java.util.concurrent.CompletableFuture;
+
+// Handle on an import or export running in the background. Progress and the
+// waypoint count can be polled from any thread; the result completes with the
+// number of waypoints transferred, or exceptionally on failure or cancel.
+// A cancelled import keeps the batches it had already applied.
+public class WaypointTransfer {
+    public enum Kind {
+        IMPORT,
+        EXPORT
+    }
+
+    private final Kind kind;
+    private final CompletableFuture<Integer> result = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private volatile int transferred;
+    private volatile int skipped;
+    private volatile int duplicates;
+    private volatile double progress;
+
+    WaypointTransfer(Kind kind) {
+        this.kind = kind;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    // 0 to 1; by bytes read for an import, by waypoints written for an export
+    public double getProgress() {
+        return progress;
+    }
+
+    public int getTransferred() {
+        return transferred;
+    }
+
+    // Import entries left out because they had no id, name or dimension
+    public int getSkipped() {
+        return skipped;
+    }
+
+    // Import entries found near an existing waypoint; what happened to them
+    // depends on the duplicate policy
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public CompletableFuture<Integer> getResult() {
+        return result;
+    }
+
+    void update(int transferred, int skipped, int duplicates, double progress) {
+        this.transferred = transferred;
+        this.skipped = skipped;
+        this.duplicates = duplicates;
+        this.progress = Math.max(0, Math.min(1, progress));
+    }
+
+    void complete() {
+        progress = 1;
+        result.complete(transferred);
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+}
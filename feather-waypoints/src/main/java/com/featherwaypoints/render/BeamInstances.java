@@ -0,0 +1,54 @@
+package com.featherwaypoints.render;
+
+import java.util.Arrays;
+
+// The beams of one frame, in the same reusable-array style as
+// MarkerInstances. Each beam spans the whole world height, so only its
+// column position, colour and faded alpha are recorded.
+final class BeamInstances {
+    private float[] x = new float[16];
+    private float[] z = new float[16];
+    private int[] colors = new int[16];
+    private float[] alphas = new float[16];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    // x and z are relative to the camera
+    void add(double x, double z, int color, float alpha) {
+        if (size == this.x.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            alphas = Arrays.copyOf(alphas, capacity);
+        }
+        this.x[size] = (float) x;
+        this.z[size] = (float) z;
+        colors[size] = color;
+        alphas[size] = alpha;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    float x(int i) {
+        return x[i];
+    }
+
+    float z(int i) {
+        return z[i];
+    }
+
+    int color(int i) {
+        return colors[i];
+    }
+
+    float alpha(int i) {
+        return alphas[i];
+    }
+}
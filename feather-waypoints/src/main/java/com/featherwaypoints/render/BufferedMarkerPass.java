@@ -0,0 +1,41 @@
+package com.featherwaypoints.render;
+
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.BufferRenderer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+
+// Software path: every marker's vertices are transformed on the CPU into two
+// shared buffers, drawn with one call each whatever the number of markers.
+// The default, and the fallback when vertex buffers could not be created.
+final class BufferedMarkerPass implements MarkerPass {
+    private final BufferBuilder fill = new BufferBuilder(16 * 1024);
+    private final BufferBuilder outline = new BufferBuilder(8 * 1024);
+    private final Matrix4f transform = new Matrix4f();
+
+    @Override
+    public int drawMarkers(MarkerInstances instances, Matrix4f view, Quaternionf rotation) {
+        if (instances.size() == 0) {
+            return 0;
+        }
+        fill.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
+        outline.begin(VertexFormat.DrawMode.DEBUG_LINES, VertexFormats.POSITION_COLOR);
+        emit(fill, outline, transform, instances, view, rotation);
+        BufferRenderer.drawWithGlobalProgram(fill.end());
+        BufferRenderer.drawWithGlobalProgram(outline.end());
+        return 2;
+    }
+
+    // The CPU side of the pass, which needs no GL context
+    static void emit(VertexConsumer fill, VertexConsumer outline, Matrix4f transform,
+                     MarkerInstances instances, Matrix4f view, Quaternionf rotation) {
+        for (int i = 0; i < instances.size(); i++) {
+            MarkerPass.markerTransform(transform, view, rotation, instances, i);
+            MarkerGeometry.marker(fill, outline, transform, instances.tier(i), 1.0f, instances.color(i),
+                    MarkerGeometry.MARKER_ALPHA);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.featherwaypoints.render;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+// Measured label text kept between frames. Names are cached per waypoint and
+// remeasured only when the name changes; distance and cluster labels are
+// shared by every marker and indexed by the whole number they show. Once
+// warm, a frame with an unchanged set of names builds no strings at all.
+final class LabelCache {
+    // Drop name entries that have not been drawn for this many frames
+    private static final int EVICT_AFTER_FRAMES = 600;
+    // Distance and cluster labels past this are built on demand instead of cached
+    private static final int MAX_CACHED_NUMBER = 4096;
+
+    static final class Label {
+        final String text;
+        final int width;
+        // Offset that centres the label on the marker
+        final float centreX;
+
+        Label(String text, int width) {
+            this.text = text;
+            this.width = width;
+            this.centreX = -width / 2.0f;
+        }
+    }
+
+    private static final class NameEntry {
+        Label label;
+        int lastUsedFrame;
+    }
+
+    private final ToIntFunction<String> widthFunction;
+    private final Map<String, NameEntry> names = new HashMap<>();
+    private Label[] distances = new Label[256];
+    private Label[] clusters = new Label[64];
+    private int frame;
+
+    LabelCache(ToIntFunction<String> widthFunction) {
+        this.widthFunction = widthFunction;
+    }
+
+    Label name(Waypoint waypoint) {
+        String name = waypoint.getName();
+        NameEntry entry = names.get(waypoint.getId());
+        if (entry == null) {
+            entry = new NameEntry();
+            names.put(waypoint.getId(), entry);
+        }
+        // Renamed since it was measured
+        if (entry.label == null || !entry.label.text.equals(name)) {
+            entry.label = new Label(name, widthFunction.applyAsInt(name));
+        }
+        entry.lastUsedFrame = frame;
+        return entry.label;
+    }
+
+    // Same rounding as "%.0fm"
+    Label distance(double distance) {
+        long metres = Math.round(distance);
+        if (metres < 0 || metres >= MAX_CACHED_NUMBER) {
+            return measure(metres + "m");
+        }
+        distances = fit(distances, (int) metres);
+        Label label = distances[(int) metres];
+        if (label == null) {
+            label = measure(metres + "m");
+            distances[(int) metres] = label;
+        }
+        return label;
+    }
+
+    // Stands in for the name of a marker that merges several waypoints
+    Label cluster(int count) {
+        if (count < 0 || count >= MAX_CACHED_NUMBER) {
+            return measure(count + " waypoints");
+        }
+        clusters = fit(clusters, count);
+        Label label = clusters[count];
+        if (label == null) {
+            label = measure(count + " waypoints");
+            clusters[count] = label;
+        }
+        return label;
+    }
+
+    private Label measure(String text) {
+        return new Label(text, widthFunction.applyAsInt(text));
+    }
+
+    private static Label[] fit(Label[] table, int index) {
+        if (index < table.length) {
+            return table;
+        }
+        Label[] grown = new Label[Math.min(MAX_CACHED_NUMBER, Math.max(index + 1, table.length * 2))];
+        System.arraycopy(table, 0, grown, 0, table.length);
+        return grown;
+    }
+
+    void nextFrame() {
+        frame++;
+        if (frame % EVICT_AFTER_FRAMES == 0) {
+            int oldest = frame - EVICT_AFTER_FRAMES;
+            names.values().removeIf(entry -> entry.lastUsedFrame < oldest);
+        }
+    }
+
+    // Widths depend on the font, so everything is remeasured after a resource reload
+    void clear() {
+        names.clear();
+        distances = new Label[distances.length];
+        clusters = new Label[clusters.length];
+    }
+}
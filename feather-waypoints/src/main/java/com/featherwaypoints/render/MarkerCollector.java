@@ -0,0 +1,191 @@
+package com.featherwaypoints.render;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.index.ClusterGrid;
+
+import java.util.List;
+
+// Works out a frame's markers from a snapshot's cluster grid: culls cells
+// that are out of range or out of view, takes cells that would be smaller
+// than the cluster radius on screen as a single marker, merges markers that
+// still overlap on screen, and finally picks each marker's detail tier.
+// Beams go through the same range and frustum tests. Markers and beams sit
+// at block centres, so positions and boxes are offset by half a block.
+// Everything here is plain arithmetic and runs without a GL context.
+final class MarkerCollector implements ClusterGrid.Visitor {
+    private static final float WAYPOINT_SIZE = 0.03f;
+    // Bounding radius of a marker and its labels at scale 1, for frustum culling
+    private static final float MARKER_RADIUS = 16.0f;
+    private static final float BEAM_ALPHA = 0.4f;
+    // Beams are tested against the frustum in sections this tall
+    private static final double BEAM_SECTION = 64;
+    // Beams fade out over the last part of the render distance, and when the
+    // camera is almost inside one
+    private static final double BEAM_FAR_FADE = 0.25;
+    private static final double BEAM_NEAR_HIDE = 4;
+    private static final double BEAM_NEAR_FADE = 12;
+
+    private final ViewFrustum frustum;
+    private final MarkerInstances instances;
+    private final RenderStats stats;
+    private final ScreenClusterer clusterer = new ScreenClusterer();
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+    private double maxDistance;
+    private double markerDistance;
+    private double labelDistance;
+    private double clusterRadius;
+
+    MarkerCollector(ViewFrustum frustum, MarkerInstances instances, RenderStats stats) {
+        this.frustum = frustum;
+        this.instances = instances;
+        this.stats = stats;
+    }
+
+    // clusterRadius is in screen pixels; 0 turns clustering off
+    void begin(double cameraX, double cameraY, double cameraZ, double maxDistance, double markerDistance,
+               double labelDistance, double clusterRadius) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+        this.maxDistance = maxDistance;
+        this.markerDistance = markerDistance;
+        this.labelDistance = labelDistance;
+        this.clusterRadius = clusterRadius;
+        instances.clear();
+        stats.reset();
+    }
+
+    void finish() {
+        clusterer.merge(instances, clusterRadius);
+        for (int i = 0; i < instances.size(); i++) {
+            double x = instances.x(i);
+            double y = instances.y(i);
+            double z = instances.z(i);
+            double distance = Math.sqrt(x * x + y * y + z * z);
+            MarkerTier tier;
+            if (distance <= labelDistance) {
+                tier = MarkerTier.FULL;
+                stats.full++;
+            } else if (distance <= markerDistance) {
+                tier = MarkerTier.MARKER;
+                stats.markerOnly++;
+            } else {
+                tier = MarkerTier.POINT;
+                stats.point++;
+            }
+            instances.setDetail(i, tier, markerScale(distance), distance);
+            if (instances.count(i) > 1) {
+                stats.clusters++;
+                stats.clustered += instances.count(i);
+            }
+        }
+    }
+
+    // Beams are columns, so their range is measured horizontally
+    void collectBeams(List<Waypoint> waypoints, double bottomY, double topY, BeamInstances beams) {
+        beams.clear();
+        double farFade = maxDistance * BEAM_FAR_FADE;
+        for (int i = 0; i < waypoints.size(); i++) {
+            Waypoint waypoint = waypoints.get(i);
+            double x = waypoint.getX() + 0.5;
+            double z = waypoint.getZ() + 0.5;
+            double dx = x - cameraX;
+            double dz = z - cameraZ;
+            double distance = Math.sqrt(dx * dx + dz * dz);
+            if (distance > maxDistance || distance < BEAM_NEAR_HIDE || !isBeamVisible(x, z, bottomY, topY)) {
+                continue;
+            }
+            double fade = Math.min(1.0, (maxDistance - distance) / farFade);
+            fade = Math.min(fade, (distance - BEAM_NEAR_HIDE) / BEAM_NEAR_FADE);
+            beams.add(dx, dz, waypoint.getColor(), (float) (BEAM_ALPHA * fade));
+            stats.beams++;
+        }
+    }
+
+    private boolean isBeamVisible(double x, double z, double bottomY, double topY) {
+        double half = BEAM_SECTION / 2;
+        for (double y = bottomY; y < topY; y += BEAM_SECTION) {
+            if (frustum.isVisible(x, Math.min(y + half, topY), z, half + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Grows with distance so markers keep a readable size up close
+    static float markerScale(double distance) {
+        return (float) Math.max(0.1, Math.min(1.0, distance * WAYPOINT_SIZE));
+    }
+
+    @Override
+    public boolean enter(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int count) {
+        if (boxDistance(minX, minY, minZ, maxX, maxY, maxZ) > maxDistance) {
+            stats.distanceCulled += count;
+            return false;
+        }
+        double halfDiagonal = 0.5 * Math.sqrt(square(maxX - minX) + square(maxY - minY) + square(maxZ - minZ));
+        if (!frustum.isVisible((minX + maxX) / 2 + 0.5, (minY + maxY) / 2 + 0.5, (minZ + maxZ) / 2 + 0.5,
+                halfDiagonal + MARKER_RADIUS)) {
+            stats.frustumCulled += count;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean collapse(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int count) {
+        if (clusterRadius <= 0) {
+            return false;
+        }
+        double distance = boxDistance(minX, minY, minZ, maxX, maxY, maxZ);
+        if (distance <= 0) {
+            return false;
+        }
+        double diagonal = Math.sqrt(square(maxX - minX) + square(maxY - minY) + square(maxZ - minZ));
+        return frustum.pixelSize(diagonal, distance) <= clusterRadius;
+    }
+
+    @Override
+    public void cluster(Waypoint representative, double x, double y, double z, int count) {
+        add(representative, count, x + 0.5, y + 0.5, z + 0.5);
+    }
+
+    @Override
+    public void waypoint(Waypoint waypoint) {
+        add(waypoint, 1, waypoint.getX() + 0.5, waypoint.getY() + 0.5, waypoint.getZ() + 0.5);
+    }
+
+    private void add(Waypoint waypoint, int count, double x, double y, double z) {
+        double dx = x - cameraX;
+        double dy = y - cameraY;
+        double dz = z - cameraZ;
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance > maxDistance) {
+            stats.distanceCulled += count;
+            return;
+        }
+        if (!frustum.isVisible(x, y, z, MARKER_RADIUS * markerScale(distance))) {
+            stats.frustumCulled += count;
+            return;
+        }
+        if (frustum.project(x, y, z)) {
+            instances.add(waypoint, count, dx, dy, dz, frustum.getProjectedX(), frustum.getProjectedY());
+        } else {
+            instances.add(waypoint, count, dx, dy, dz, Double.NaN, Double.NaN);
+        }
+    }
+
+    // Distance from the camera to the nearest point of the box, 0 inside it
+    private double boxDistance(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        double dx = Math.max(0, Math.max(minX + 0.5 - cameraX, cameraX - maxX - 0.5));
+        double dy = Math.max(0, Math.max(minY + 0.5 - cameraY, cameraY - maxY - 0.5));
+        double dz = Math.max(0, Math.max(minZ + 0.5 - cameraZ, cameraZ - maxZ - 0.5));
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,115 @@
+package com.featherwaypoints.render;
+
+import net.minecraft.client.render.VertexConsumer;
+import org.joml.Matrix4f;
+
+// Vertex emission for waypoint markers, kept free of render state so the same
+// code fills the batched frame buffers and can be checked against a recording
+// VertexConsumer. Fill geometry is QUADS and outlines are DEBUG_LINES, both in
+// POSITION_COLOR.
+public final class MarkerGeometry {
+    public static final int DIAMOND_FILL_VERTICES = 4;
+    public static final int DIAMOND_OUTLINE_VERTICES = 8;
+    public static final int LABEL_BACKGROUND_VERTICES = 4;
+    public static final int POINT_VERTICES = 4;
+    public static final int BEAM_VERTICES = 16;
+    // Half-sizes in marker units, before distance scaling
+    public static final float MARKER_SIZE = 8.0f;
+    public static final float POINT_SIZE = 2.0f;
+    public static final float MARKER_ALPHA = 0.8f;
+    public static final float BEAM_HALF_WIDTH = 0.2f;
+    // Name and distance labels
+    public static final int LABELS_PER_MARKER = 2;
+    // Per marker in the full-detail tier
+    public static final int FILL_VERTICES_PER_MARKER = DIAMOND_FILL_VERTICES + LABELS_PER_MARKER * LABEL_BACKGROUND_VERTICES;
+    public static final int OUTLINE_VERTICES_PER_MARKER = DIAMOND_OUTLINE_VERTICES;
+
+    private MarkerGeometry() {
+    }
+
+    public static void diamond(VertexConsumer fill, VertexConsumer outline, Matrix4f matrix,
+                               float size, int color, float alpha) {
+        float r = ((color >> 16) & 0xFF) / 255.0f;
+        float g = ((color >> 8) & 0xFF) / 255.0f;
+        float b = (color & 0xFF) / 255.0f;
+
+        fill.vertex(matrix, 0, size, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, -size, 0, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, 0, -size, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, size, 0, 0).color(r, g, b, alpha).next();
+
+        // Separate segments, since line strips cannot be batched
+        line(outline, matrix, 0, size, -size, 0);
+        line(outline, matrix, -size, 0, 0, -size);
+        line(outline, matrix, 0, -size, size, 0);
+        line(outline, matrix, size, 0, 0, size);
+    }
+
+    // One marker in the geometry of its tier
+    static void marker(VertexConsumer fill, VertexConsumer outline, Matrix4f matrix, MarkerTier tier,
+                       float size, int color, float alpha) {
+        if (tier == MarkerTier.POINT) {
+            point(fill, matrix, size, color, alpha);
+        } else {
+            diamond(fill, outline, matrix, size, color, alpha);
+        }
+    }
+
+    // Far-away tier: a small unoutlined diamond
+    public static void point(VertexConsumer fill, Matrix4f matrix, float size, int color, float alpha) {
+        float r = ((color >> 16) & 0xFF) / 255.0f;
+        float g = ((color >> 8) & 0xFF) / 255.0f;
+        float b = (color & 0xFF) / 255.0f;
+
+        fill.vertex(matrix, 0, size, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, -size, 0, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, 0, -size, 0).color(r, g, b, alpha).next();
+        fill.vertex(matrix, size, 0, 0).color(r, g, b, alpha).next();
+    }
+
+    public static void labelBackground(VertexConsumer fill, Matrix4f matrix, float x, float y,
+                                       float width, float height) {
+        fill.vertex(matrix, x - 2, y - 1, 0).color(0, 0, 0, 128).next();
+        fill.vertex(matrix, x - 2, y + height + 1, 0).color(0, 0, 0, 128).next();
+        fill.vertex(matrix, x + width + 2, y + height + 1, 0).color(0, 0, 0, 128).next();
+        fill.vertex(matrix, x + width + 2, y - 1, 0).color(0, 0, 0, 128).next();
+    }
+
+    // Four open sides of a column that fades out towards yMax
+    public static void beam(VertexConsumer fill, Matrix4f matrix, float halfWidth, float yMin, float yMax,
+                            int color, float alpha) {
+        float r = ((color >> 16) & 0xFF) / 255.0f;
+        float g = ((color >> 8) & 0xFF) / 255.0f;
+        float b = (color & 0xFF) / 255.0f;
+        float w = halfWidth;
+
+        // North face
+        fill.vertex(matrix, -w, yMin, -w).color(r, g, b, alpha).next();
+        fill.vertex(matrix, -w, yMax, -w).color(r, g, b, 0).next();
+        fill.vertex(matrix, w, yMax, -w).color(r, g, b, 0).next();
+        fill.vertex(matrix, w, yMin, -w).color(r, g, b, alpha).next();
+
+        // South face
+        fill.vertex(matrix, w, yMin, w).color(r, g, b, alpha).next();
+        fill.vertex(matrix, w, yMax, w).color(r, g, b, 0).next();
+        fill.vertex(matrix, -w, yMax, w).color(r, g, b, 0).next();
+        fill.vertex(matrix, -w, yMin, w).color(r, g, b, alpha).next();
+
+        // East face
+        fill.vertex(matrix, w, yMin, -w).color(r, g, b, alpha).next();
+        fill.vertex(matrix, w, yMax, -w).color(r, g, b, 0).next();
+        fill.vertex(matrix, w, yMax, w).color(r, g, b, 0).next();
+        fill.vertex(matrix, w, yMin, w).color(r, g, b, alpha).next();
+
+        // West face
+        fill.vertex(matrix, -w, yMin, w).color(r, g, b, alpha).next();
+        fill.vertex(matrix, -w, yMax, w).color(r, g, b, 0).next();
+        fill.vertex(matrix, -w, yMax, -w).color(r, g, b, 0).next();
+        fill.vertex(matrix, -w, yMin, -w).color(r, g, b, alpha).next();
+    }
+
+    private static void line(VertexConsumer outline, Matrix4f matrix, float x1, float y1, float x2, float y2) {
+        outline.vertex(matrix, x1, y1, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
+        outline.vertex(matrix, x2, y2, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
+    }
+}
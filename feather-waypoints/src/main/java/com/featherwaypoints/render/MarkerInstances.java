@@ -0,0 +1,155 @@
+package com.featherwaypoints.render;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.Arrays;
+
+// The markers of one frame as plain arrays: where each one sits relative to
+// the camera, how large it is and what colour. Filling it needs no GPU, and
+// the same list feeds whichever MarkerPass draws the frame. The arrays grow
+// as needed and are reused, so a steady frame allocates nothing.
+//
+// A marker may stand for a cluster of waypoints, in which case count is above
+// one and the waypoint is the one whose colour the cluster takes.
+final class MarkerInstances {
+    private Waypoint[] waypoints = new Waypoint[64];
+    private int[] counts = new int[64];
+    private MarkerTier[] tiers = new MarkerTier[64];
+    private float[] x = new float[64];
+    private float[] y = new float[64];
+    private float[] z = new float[64];
+    private float[] screenX = new float[64];
+    private float[] screenY = new float[64];
+    private float[] scale = new float[64];
+    private float[] distance = new float[64];
+    private int size;
+
+    void clear() {
+        // Keep the arrays, but let go of the waypoints
+        Arrays.fill(waypoints, 0, size, null);
+        size = 0;
+    }
+
+    // x, y and z are relative to the camera; the screen position is in pixels,
+    // or NaN when the marker is not in front of the camera
+    void add(Waypoint waypoint, int count, double x, double y, double z, double screenX, double screenY) {
+        if (size == waypoints.length) {
+            grow();
+        }
+        waypoints[size] = waypoint;
+        counts[size] = count;
+        this.x[size] = (float) x;
+        this.y[size] = (float) y;
+        this.z[size] = (float) z;
+        this.screenX[size] = (float) screenX;
+        this.screenY[size] = (float) screenY;
+        size++;
+    }
+
+    // Level of detail, decided once the frame's clusters are final
+    void setDetail(int i, MarkerTier tier, float scale, double distance) {
+        tiers[i] = tier;
+        this.scale[i] = scale;
+        this.distance[i] = (float) distance;
+    }
+
+    // Folds marker from into marker into, weighting positions by count
+    void merge(int into, int from) {
+        int total = counts[into] + counts[from];
+        float a = (float) counts[into] / total;
+        float b = (float) counts[from] / total;
+        x[into] = x[into] * a + x[from] * b;
+        y[into] = y[into] * a + y[from] * b;
+        z[into] = z[into] * a + z[from] * b;
+        screenX[into] = screenX[into] * a + screenX[from] * b;
+        screenY[into] = screenY[into] * a + screenY[from] * b;
+        if (counts[from] > counts[into]) {
+            waypoints[into] = waypoints[from];
+        }
+        counts[into] = total;
+    }
+
+    void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        waypoints[to] = waypoints[from];
+        counts[to] = counts[from];
+        tiers[to] = tiers[from];
+        x[to] = x[from];
+        y[to] = y[from];
+        z[to] = z[from];
+        screenX[to] = screenX[from];
+        screenY[to] = screenY[from];
+        scale[to] = scale[from];
+        distance[to] = distance[from];
+    }
+
+    // Drops every marker from newSize on
+    void truncate(int newSize) {
+        Arrays.fill(waypoints, newSize, size, null);
+        size = newSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Waypoint waypoint(int i) {
+        return waypoints[i];
+    }
+
+    int count(int i) {
+        return counts[i];
+    }
+
+    MarkerTier tier(int i) {
+        return tiers[i];
+    }
+
+    float x(int i) {
+        return x[i];
+    }
+
+    float y(int i) {
+        return y[i];
+    }
+
+    float z(int i) {
+        return z[i];
+    }
+
+    float screenX(int i) {
+        return screenX[i];
+    }
+
+    float screenY(int i) {
+        return screenY[i];
+    }
+
+    float scale(int i) {
+        return scale[i];
+    }
+
+    float distance(int i) {
+        return distance[i];
+    }
+
+    int color(int i) {
+        return waypoints[i].getColor();
+    }
+
+    private void grow() {
+        int capacity = waypoints.length * 2;
+        waypoints = Arrays.copyOf(waypoints, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        tiers = Arrays.copyOf(tiers, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        screenX = Arrays.copyOf(screenX, capacity);
+        screenY = Arrays.copyOf(screenY, capacity);
+        scale = Arrays.copyOf(scale, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+    }
+}
@@ -0,0 +1,23 @@
+package com.featherwaypoints.render;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+
+// Draws the marker meshes of a frame. The renderer sets blend and depth state
+// and the position-colour shader before calling either method.
+interface MarkerPass {
+    // view is the world matrix the markers are positioned in; rotation turns
+    // them to face the camera. Returns the number of draw calls issued.
+    int drawMarkers(MarkerInstances instances, Matrix4f view, Quaternionf rotation);
+
+    // Moves a unit mesh to marker i, facing the camera
+    static Matrix4f markerTransform(Matrix4f out, Matrix4f view, Quaternionf rotation,
+                                    MarkerInstances instances, int i) {
+        float size = instances.scale(i)
+                * (instances.tier(i) == MarkerTier.POINT ? MarkerGeometry.POINT_SIZE : MarkerGeometry.MARKER_SIZE);
+        return out.set(view)
+                .translate(instances.x(i), instances.y(i), instances.z(i))
+                .rotate(rotation)
+                .scale(-size, -size, size);
+    }
+}
@@ -0,0 +1,9 @@
+package com.featherwaypoints.render;
+
+// Level of detail a marker is drawn with, chosen by distance from the camera
+enum MarkerTier {
+    // Marker and labels
+    FULL,
+    MARKER,
+    POINT
+}
@@ -0,0 +1,104 @@
+package com.featherwaypoints.render;
+
+// Per-frame marker counts and timings. The renderer fills one instance while
+// drawing and copies it into the published one at the end of the frame, so
+// neither allocates.
+public final class RenderStats {
+    int full;
+    int markerOnly;
+    int point;
+    int frustumCulled;
+    int distanceCulled;
+    int clusters;
+    int clustered;
+    int beams;
+    int considered;
+    int drawCalls;
+    long renderNanos;
+
+    void reset() {
+        full = 0;
+        markerOnly = 0;
+        point = 0;
+        frustumCulled = 0;
+        distanceCulled = 0;
+        clusters = 0;
+        clustered = 0;
+        beams = 0;
+        considered = 0;
+        drawCalls = 0;
+        renderNanos = 0;
+    }
+
+    void copyFrom(RenderStats other) {
+        full = other.full;
+        markerOnly = other.markerOnly;
+        point = other.point;
+        frustumCulled = other.frustumCulled;
+        distanceCulled = other.distanceCulled;
+        clusters = other.clusters;
+        clustered = other.clustered;
+        beams = other.beams;
+        considered = other.considered;
+        drawCalls = other.drawCalls;
+        renderNanos = other.renderNanos;
+    }
+
+    // Tier counts are markers drawn; a cluster marker counts once
+    public int getFull() {
+        return full;
+    }
+
+    public int getMarkerOnly() {
+        return markerOnly;
+    }
+
+    public int getPoint() {
+        return point;
+    }
+
+    public int getRendered() {
+        return full + markerOnly + point;
+    }
+
+    public int getFrustumCulled() {
+        return frustumCulled;
+    }
+
+    // Waypoints beyond the render distance
+    public int getDistanceCulled() {
+        return distanceCulled;
+    }
+
+    public int getCulled() {
+        return frustumCulled + distanceCulled;
+    }
+
+    // Markers drawn in place of several waypoints
+    public int getClusters() {
+        return clusters;
+    }
+
+    // Waypoints drawn as part of a cluster
+    public int getClustered() {
+        return clustered;
+    }
+
+    public int getBeams() {
+        return beams;
+    }
+
+    // Shown waypoints in the dimension, before any culling
+    public int getConsidered() {
+        return considered;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    // CPU time of the whole pass, collecting and submitting draws
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+}
@@ -0,0 +1,120 @@
+package com.featherwaypoints.render;
+
+import java.util.Arrays;
+
+// Merges markers whose screen positions are within a radius of each other.
+// Markers are bucketed into a pixel grid with cells one radius wide, so each
+// one is only compared against the clusters in its own and the eight
+// neighbouring cells. The grid is an open-addressed table that is reused
+// between frames and invalidated by bumping a generation number.
+final class ScreenClusterer {
+    private long[] keys = new long[256];
+    private int[] heads = new int[256];
+    private int[] stamps = new int[256];
+    // Next cluster in the same cell, by index
+    private int[] next = new int[128];
+    private int generation;
+
+    // Returns how many markers were folded into others
+    int merge(MarkerInstances instances, double radius) {
+        int size = instances.size();
+        if (radius <= 0 || size < 2) {
+            return 0;
+        }
+        prepare(size);
+        double radiusSquared = radius * radius;
+        int survivors = 0;
+        for (int i = 0; i < size; i++) {
+            float sx = instances.screenX(i);
+            float sy = instances.screenY(i);
+            if (Float.isNaN(sx)) {
+                // Not in front of the camera, so never merged
+                instances.move(i, survivors++);
+                continue;
+            }
+            int cellX = (int) Math.floor(sx / radius);
+            int cellY = (int) Math.floor(sy / radius);
+            int target = find(instances, cellX, cellY, sx, sy, radiusSquared);
+            if (target >= 0) {
+                instances.merge(target, i);
+            } else {
+                instances.move(i, survivors);
+                insert(cellX, cellY, survivors);
+                survivors++;
+            }
+        }
+        instances.truncate(survivors);
+        return size - survivors;
+    }
+
+    private int find(MarkerInstances instances, int cellX, int cellY, float sx, float sy, double radiusSquared) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int j = head(cellX + dx, cellY + dy); j >= 0; j = next[j]) {
+                    double ox = instances.screenX(j) - sx;
+                    double oy = instances.screenY(j) - sy;
+                    if (ox * ox + oy * oy <= radiusSquared) {
+                        return j;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void prepare(int size) {
+        if (next.length < size) {
+            next = new int[Integer.highestOneBit(size) << 1];
+        }
+        if (keys.length < size * 2) {
+            int capacity = Integer.highestOneBit(size * 2) << 1;
+            keys = new long[capacity];
+            heads = new int[capacity];
+            stamps = new int[capacity];
+            generation = 0;
+        }
+        generation++;
+        if (generation == 0) {
+            // Wrapped around; old stamps could look current
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    private int head(int cellX, int cellY) {
+        long key = key(cellX, cellY);
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; stamps[slot] == generation; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return heads[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int cellX, int cellY, int index) {
+        long key = key(cellX, cellY);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (stamps[slot] == generation && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (stamps[slot] == generation) {
+            next[index] = heads[slot];
+        } else {
+            stamps[slot] = generation;
+            keys[slot] = key;
+            next[index] = -1;
+        }
+        heads[slot] = index;
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
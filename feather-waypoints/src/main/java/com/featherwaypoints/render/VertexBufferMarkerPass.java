@@ -0,0 +1,132 @@
+package com.featherwaypoints.render;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.gl.ShaderProgram;
+import net.minecraft.client.gl.VertexBuffer;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+
+// GPU path, turned on with gpu_marker_meshes: the unit diamond, its outline
+// and the far-away point are uploaded once as white meshes, and each marker
+// is drawn from them with its own transform and the colour supplied through
+// the shader colour modulator. Nothing is written into vertex memory per
+// frame, but every marker is its own draw call, so with many markers on
+// screen the batched BufferedMarkerPass is cheaper.
+final class VertexBufferMarkerPass implements MarkerPass {
+    private VertexBuffer diamond;
+    private VertexBuffer outline;
+    private VertexBuffer point;
+    private boolean failed;
+    private final Matrix4f transform = new Matrix4f();
+    private final Matrix4f modelView = new Matrix4f();
+
+    // False once uploading the meshes has failed; the renderer then falls back
+    // to the software path
+    boolean isAvailable() {
+        return !failed;
+    }
+
+    @Override
+    public int drawMarkers(MarkerInstances instances, Matrix4f view, Quaternionf rotation) {
+        if (instances.size() == 0 || !upload()) {
+            return 0;
+        }
+        int drawCalls = 0;
+        ShaderProgram shader = GameRenderer.getPositionColorProgram();
+        Matrix4f projection = RenderSystem.getProjectionMatrix();
+
+        drawCalls += drawFills(diamond, false, instances, view, rotation, projection, shader);
+        drawCalls += drawFills(point, true, instances, view, rotation, projection, shader);
+
+        // Outlines are white, so only the transform changes between them
+        RenderSystem.setShaderColor(1.0f, 1.0f, 1.0f, 1.0f);
+        outline.bind();
+        for (int i = 0; i < instances.size(); i++) {
+            if (instances.tier(i) != MarkerTier.POINT) {
+                outline.draw(modelView(view, rotation, instances, i), projection, shader);
+                drawCalls++;
+            }
+        }
+        VertexBuffer.unbind();
+        return drawCalls;
+    }
+
+    // The fills of either the point markers or all the others
+    private int drawFills(VertexBuffer mesh, boolean points, MarkerInstances instances, Matrix4f view,
+                          Quaternionf rotation, Matrix4f projection, ShaderProgram shader) {
+        int drawCalls = 0;
+        mesh.bind();
+        for (int i = 0; i < instances.size(); i++) {
+            if ((instances.tier(i) == MarkerTier.POINT) != points) {
+                continue;
+            }
+            int color = instances.color(i);
+            RenderSystem.setShaderColor(((color >> 16) & 0xFF) / 255.0f, ((color >> 8) & 0xFF) / 255.0f,
+                    (color & 0xFF) / 255.0f, MarkerGeometry.MARKER_ALPHA);
+            mesh.draw(modelView(view, rotation, instances, i), projection, shader);
+            drawCalls++;
+        }
+        return drawCalls;
+    }
+
+    private Matrix4f modelView(Matrix4f view, Quaternionf rotation, MarkerInstances instances, int i) {
+        MarkerPass.markerTransform(transform, view, rotation, instances, i);
+        return modelView.set(RenderSystem.getModelViewMatrix()).mul(transform);
+    }
+
+    private boolean upload() {
+        if (diamond != null) {
+            return true;
+        }
+        if (failed) {
+            return false;
+        }
+        VertexBuffer diamondBuffer = null;
+        VertexBuffer outlineBuffer = null;
+        try {
+            Matrix4f identity = new Matrix4f();
+            BufferBuilder fillBuilder = new BufferBuilder(256);
+            BufferBuilder outlineBuilder = new BufferBuilder(256);
+            fillBuilder.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
+            outlineBuilder.begin(VertexFormat.DrawMode.DEBUG_LINES, VertexFormats.POSITION_COLOR);
+            MarkerGeometry.diamond(fillBuilder, outlineBuilder, identity, 1.0f, 0xFFFFFF, 1.0f);
+            diamondBuffer = upload(fillBuilder.end());
+            outlineBuffer = upload(outlineBuilder.end());
+            fillBuilder.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
+            MarkerGeometry.point(fillBuilder, identity, 1.0f, 0xFFFFFF, 1.0f);
+            point = upload(fillBuilder.end());
+            outline = outlineBuffer;
+            diamond = diamondBuffer;
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to upload waypoint marker meshes, falling back to software rendering: " + e.getMessage());
+            // Whatever was uploaded before the failure
+            if (diamondBuffer != null) {
+                diamondBuffer.close();
+            }
+            if (outlineBuffer != null) {
+                outlineBuffer.close();
+            }
+            failed = true;
+            return false;
+        }
+    }
+
+    private static VertexBuffer upload(BufferBuilder.BuiltBuffer built) {
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        try {
+            buffer.bind();
+            buffer.upload(built);
+        } catch (RuntimeException e) {
+            VertexBuffer.unbind();
+            buffer.close();
+            throw e;
+        }
+        VertexBuffer.unbind();
+        return buffer;
+    }
+}
@@ -0,0 +1,109 @@
+package com.featherwaypoints.render;
+
+// Sphere test against the four side planes and the near plane of the camera's
+// view, worked out from the camera angles so culling a marker costs a few
+// multiplications and no allocation. The field of view is widened by
+// FOV_SLACK to cover dynamic FOV changes such as sprinting. Also projects
+// points to screen pixels, for clustering markers that would overlap.
+public final class ViewFrustum {
+    private static final double FOV_SLACK = 1.25;
+
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+    // Camera basis: forward, right and up
+    private double forwardX;
+    private double forwardY;
+    private double forwardZ;
+    private double rightX;
+    private double rightZ;
+    private double upX;
+    private double upY;
+    private double upZ;
+    private double cosHorizontal;
+    private double sinHorizontal;
+    private double cosVertical;
+    private double sinVertical;
+    // Pixels per unit of tangent, for projection
+    private double focalLength;
+    private double projectedX;
+    private double projectedY;
+
+    // yaw and pitch in degrees as Minecraft reports them; fov is vertical and
+    // the viewport height is in pixels
+    public void update(double cameraX, double cameraY, double cameraZ, float yaw, float pitch,
+                       double verticalFovDegrees, double aspectRatio, int viewportHeight) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+
+        double yawRadians = Math.toRadians(yaw);
+        double pitchRadians = Math.toRadians(pitch);
+        double cosPitch = Math.cos(pitchRadians);
+        forwardX = -Math.sin(yawRadians) * cosPitch;
+        forwardY = -Math.sin(pitchRadians);
+        forwardZ = Math.cos(yawRadians) * cosPitch;
+        // Right depends on yaw alone, so it stays defined when looking straight up or down
+        rightX = -Math.cos(yawRadians);
+        rightZ = -Math.sin(yawRadians);
+        // up = right x forward
+        upX = -rightZ * forwardY;
+        upY = rightZ * forwardX - rightX * forwardZ;
+        upZ = rightX * forwardY;
+
+        double tanHalfFov = Math.tan(Math.toRadians(verticalFovDegrees) / 2);
+        focalLength = viewportHeight / 2.0 / tanHalfFov;
+        double tanVertical = tanHalfFov * FOV_SLACK;
+        double tanHorizontal = tanVertical * aspectRatio;
+        double vertical = Math.atan(tanVertical);
+        double horizontal = Math.atan(tanHorizontal);
+        cosVertical = Math.cos(vertical);
+        sinVertical = Math.sin(vertical);
+        cosHorizontal = Math.cos(horizontal);
+        sinHorizontal = Math.sin(horizontal);
+    }
+
+    public boolean isVisible(double x, double y, double z, double radius) {
+        double dx = x - cameraX;
+        double dy = y - cameraY;
+        double dz = z - cameraZ;
+        double depth = dx * forwardX + dy * forwardY + dz * forwardZ;
+        if (depth < -radius) {
+            return false;
+        }
+        double side = Math.abs(dx * rightX + dz * rightZ);
+        if (side * cosHorizontal - depth * sinHorizontal > radius) {
+            return false;
+        }
+        double height = Math.abs(dx * upX + dy * upY + dz * upZ);
+        return height * cosVertical - depth * sinVertical <= radius;
+    }
+
+    // Screen position in pixels from the centre of the view, read back with
+    // getProjectedX/Y. False for points behind the camera.
+    public boolean project(double x, double y, double z) {
+        double dx = x - cameraX;
+        double dy = y - cameraY;
+        double dz = z - cameraZ;
+        double depth = dx * forwardX + dy * forwardY + dz * forwardZ;
+        if (depth <= 0) {
+            return false;
+        }
+        projectedX = (dx * rightX + dz * rightZ) / depth * focalLength;
+        projectedY = (dx * upX + dy * upY + dz * upZ) / depth * focalLength;
+        return true;
+    }
+
+    public double getProjectedX() {
+        return projectedX;
+    }
+
+    public double getProjectedY() {
+        return projectedY;
+    }
+
+    // Size in pixels of something size blocks across seen from distance blocks away
+    public double pixelSize(double size, double distance) {
+        return size / distance * focalLength;
+    }
+}
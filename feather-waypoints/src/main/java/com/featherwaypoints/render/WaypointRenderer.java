@@ -1,61 +1,123 @@
 package com.featherwaypoints.render;
 
-import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.config.WaypointConfig;
+import com.featherwaypoints.data.WaypointDimension;
+import com.featherwaypoints.index.WaypointSnapshot;
 import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.stats.LatencyHistogram;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.render.*;
+import net.minecraft.client.util.Window;
 import net.minecraft.client.util.math.MatrixStack;
-import net.minecraft.text.Text;
-import net.minecraft.util.Identifier;
-import net.minecraft.util.math.MathHelper;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
 import org.joml.Matrix4f;
 import com.mojang.blaze3d.systems.RenderSystem;
 
-import java.util.List;
-
 public class WaypointRenderer {
-    private static final int MAX_RENDER_DISTANCE = 1000;
-    private static final float WAYPOINT_SIZE = 0.03f;
     private static final float TEXT_SCALE = 0.02f;
 
+    // Shared by every beam or label of a frame; each is drawn with a single call
+    private static final BufferBuilder BEAM_BUFFER = new BufferBuilder(8 * 1024);
+    private static final BufferBuilder LABEL_BUFFER = new BufferBuilder(16 * 1024);
+    private static final VertexConsumerProvider.Immediate TEXT_CONSUMERS =
+            VertexConsumerProvider.immediate(new BufferBuilder(16 * 1024));
+
+    private static final MarkerInstances INSTANCES = new MarkerInstances();
+    private static final BeamInstances BEAMS = new BeamInstances();
+    private static final Matrix4f BEAM_TRANSFORM = new Matrix4f();
+    private static final VertexBufferMarkerPass VERTEX_BUFFER_PASS = new VertexBufferMarkerPass();
+    private static final BufferedMarkerPass BUFFERED_PASS = new BufferedMarkerPass();
+    private static final ViewFrustum FRUSTUM = new ViewFrustum();
+    private static final RenderStats FRAME_STATS = new RenderStats();
+    private static final RenderStats LAST_FRAME_STATS = new RenderStats();
+    private static final LatencyHistogram RENDER_LATENCY = new LatencyHistogram();
+    private static final MarkerCollector COLLECTOR = new MarkerCollector(FRUSTUM, INSTANCES, FRAME_STATS);
+    private static LabelCache labels;
+    // World keys are interned, so the dimension is only looked up again after a change
+    private static RegistryKey<World> lastWorldKey;
+    private static WaypointDimension lastDimension;
+
     public static void renderWaypoints(MatrixStack matrices, Camera camera) {
         MinecraftClient client = MinecraftClient.getInstance();
-        if (client.player == null || client.world == null) {
+        // Nothing to draw until the world's waypoints have loaded
+        if (client.player == null || client.world == null || !WaypointManager.isReady()) {
             return;
         }
 
-        String currentDimension = client.world.getRegistryKey().getValue().toString();
-        WaypointManager waypointManager = WaypointManager.getInstance();
-        List<Waypoint> waypoints = waypointManager.getVisibleWaypointsInDimension(currentDimension);
+        long start = System.nanoTime();
+        render(client, matrices, camera);
+        FRAME_STATS.renderNanos = System.nanoTime() - start;
+        RENDER_LATENCY.record(FRAME_STATS.renderNanos);
+        LAST_FRAME_STATS.copyFrom(FRAME_STATS);
+    }
 
-        if (waypoints.isEmpty()) {
+    private static void render(MinecraftClient client, MatrixStack matrices, Camera camera) {
+        WaypointDimension currentDimension = getDimension(client.world);
+        WaypointManager waypointManager = WaypointManager.getInstance();
+        WaypointConfig config = waypointManager.getConfig();
+        Vec3d cameraPos = camera.getPos();
+        if (labels == null) {
+            labels = new LabelCache(client.textRenderer::getWidth);
+        }
+        labels.nextFrame();
+
+        Window window = client.getWindow();
+        int height = Math.max(1, window.getFramebufferHeight());
+        FRUSTUM.update(cameraPos.x, cameraPos.y, cameraPos.z, camera.getYaw(), camera.getPitch(),
+                client.options.getFov().getValue(), (double) window.getFramebufferWidth() / height, height);
+
+        // Work out what to draw first, then hand the whole frame to the marker pass
+        COLLECTOR.begin(cameraPos.x, cameraPos.y, cameraPos.z, config.getMaxRenderDistance(),
+                config.getMarkerDistance(), config.getLabelDistance(),
+                config.getClusterRadius() * window.getScaleFactor());
+        WaypointSnapshot snapshot = waypointManager.getSnapshot(currentDimension);
+        FRAME_STATS.considered = snapshot.getShownWaypoints().size();
+        snapshot.getShownClusters().visit(COLLECTOR);
+        COLLECTOR.finish();
+        // Beam height follows the world, so custom-height dimensions work
+        int bottomY = client.world.getBottomY();
+        int topY = client.world.getTopY();
+        COLLECTOR.collectBeams(snapshot.getBeamWaypoints(), bottomY, topY, BEAMS);
+
+        if (INSTANCES.size() == 0 && BEAMS.size() == 0) {
             return;
         }
-
-        Vec3d cameraPos = camera.getPos();
         
         // Set up rendering state
         RenderSystem.enableBlend();
         RenderSystem.defaultBlendFunc();
         RenderSystem.disableDepthTest();
         RenderSystem.disableCull();
+        RenderSystem.setShader(GameRenderer::getPositionColorProgram);
 
-        matrices.push();
-        
-        for (Waypoint waypoint : waypoints) {
-            Vec3d waypointPos = new Vec3d(waypoint.getX() + 0.5, waypoint.getY() + 0.5, waypoint.getZ() + 0.5);
-            double distance = cameraPos.distanceTo(waypointPos);
-            
-            if (distance > MAX_RENDER_DISTANCE) {
+        // Beams, markers, then label backgrounds, then all label text
+        if (BEAMS.size() > 0) {
+            drawBeams(matrices.peek().getPositionMatrix(), (float) (bottomY - cameraPos.y), topY - bottomY);
+            FRAME_STATS.drawCalls++;
+        }
+        FRAME_STATS.drawCalls += markerPass(config).drawMarkers(INSTANCES, matrices.peek().getPositionMatrix(),
+                camera.getRotation());
+
+        boolean labelled = false;
+        for (int i = 0; i < INSTANCES.size(); i++) {
+            if (INSTANCES.tier(i) != MarkerTier.FULL) {
                 continue;
             }
-
-            renderWaypoint(matrices, waypoint, waypointPos, cameraPos, camera, distance);
+            if (!labelled) {
+                LABEL_BUFFER.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
+                labelled = true;
+            }
+            addLabels(matrices, client.textRenderer, camera, i);
+        }
+        if (labelled) {
+            BufferRenderer.drawWithGlobalProgram(LABEL_BUFFER.end());
+            TEXT_CONSUMERS.draw();
+            // Backgrounds, then text
+            FRAME_STATS.drawCalls += 2;
         }
-
-        matrices.pop();
         
         // Reset rendering state
         RenderSystem.enableDepthTest();
@@ -63,174 +125,83 @@ public class WaypointRenderer {
         RenderSystem.disableBlend();
     }
 
-    private static void renderWaypoint(MatrixStack matrices, Waypoint waypoint, Vec3d waypointPos, 
-                                     Vec3d cameraPos, Camera camera, double distance) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        TextRenderer textRenderer = client.textRenderer;
+    // Client thread only
+    public static WaypointDimension getDimension(World world) {
+        RegistryKey<World> key = world.getRegistryKey();
+        if (key != lastWorldKey) {
+            lastDimension = WaypointDimension.register(key.getValue().toString());
+            lastWorldKey = key;
+        }
+        return lastDimension;
+    }
 
-        matrices.push();
+    // Called after a resource reload, since label widths depend on the font
+    public static void clearLabelCache() {
+        if (labels != null) {
+            labels.clear();
+        }
+    }
 
-        // Translate to waypoint position
-        matrices.translate(waypointPos.x - cameraPos.x, waypointPos.y - cameraPos.y, waypointPos.z - cameraPos.z);
+    // Counts from the most recently rendered frame
+    public static RenderStats getFrameStats() {
+        return LAST_FRAME_STATS;
+    }
 
-        // Face the camera
-        matrices.multiply(camera.getRotation());
-        matrices.scale(-1.0f, -1.0f, 1.0f);
+    // Time of every render pass since start-up
+    public static LatencyHistogram getRenderLatency() {
+        return RENDER_LATENCY;
+    }
 
-        // Scale based on distance for consistent size
-        float scale = (float) Math.max(0.1, Math.min(1.0, distance * WAYPOINT_SIZE));
-        matrices.scale(scale, scale, scale);
+    private static void drawBeams(Matrix4f view, float bottom, float height) {
+        BEAM_BUFFER.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
+        for (int i = 0; i < BEAMS.size(); i++) {
+            BEAM_TRANSFORM.set(view).translate(BEAMS.x(i), bottom, BEAMS.z(i));
+            MarkerGeometry.beam(BEAM_BUFFER, BEAM_TRANSFORM, MarkerGeometry.BEAM_HALF_WIDTH, 0, height,
+                    BEAMS.color(i), BEAMS.alpha(i));
+        }
+        BufferRenderer.drawWithGlobalProgram(BEAM_BUFFER.end());
+    }
 
-        Matrix4f matrix = matrices.peek().getPositionMatrix();
+    private static MarkerPass markerPass(WaypointConfig config) {
+        return config.isGpuMarkerMeshes() && VERTEX_BUFFER_PASS.isAvailable() ? VERTEX_BUFFER_PASS : BUFFERED_PASS;
+    }
 
-        // Draw waypoint marker (diamond shape)
-        Tessellator tessellator = Tessellator.getInstance();
-        BufferBuilder buffer = tessellator.getBuffer();
-        
-        float size = 8.0f;
-        int color = waypoint.getColor();
-        float r = ((color >> 16) & 0xFF) / 255.0f;
-        float g = ((color >> 8) & 0xFF) / 255.0f;
-        float b = (color & 0xFF) / 255.0f;
-        float a = 0.8f;
-
-        // Draw diamond background
-        buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
-        buffer.vertex(matrix, 0, size, 0).color(r, g, b, a).next();
-        buffer.vertex(matrix, -size, 0, 0).color(r, g, b, a).next();
-        buffer.vertex(matrix, 0, -size, 0).color(r, g, b, a).next();
-        buffer.vertex(matrix, size, 0, 0).color(r, g, b, a).next();
-        tessellator.draw();
-
-        // Draw diamond outline
-        buffer.begin(VertexFormat.DrawMode.DEBUG_LINE_STRIP, VertexFormats.POSITION_COLOR);
-        buffer.vertex(matrix, 0, size, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
-        buffer.vertex(matrix, -size, 0, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
-        buffer.vertex(matrix, 0, -size, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
-        buffer.vertex(matrix, size, 0, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
-        buffer.vertex(matrix, 0, size, 0).color(1.0f, 1.0f, 1.0f, 1.0f).next();
-        tessellator.draw();
-
-        // Draw text
+    private static void addLabels(MatrixStack matrices, TextRenderer textRenderer, Camera camera, int i) {
         matrices.push();
+
+        // Same transform the marker pass gives the diamond
+        matrices.translate(INSTANCES.x(i), INSTANCES.y(i), INSTANCES.z(i));
+        matrices.multiply(camera.getRotation());
+        matrices.scale(-1.0f, -1.0f, 1.0f);
+        float scale = INSTANCES.scale(i);
+        matrices.scale(scale, scale, scale);
+
+        float size = MarkerGeometry.MARKER_SIZE;
         matrices.scale(TEXT_SCALE, TEXT_SCALE, TEXT_SCALE);
         
-        String name = waypoint.getName();
-        String distanceText = String.format("%.0fm", distance);
-        
-        int nameWidth = textRenderer.getWidth(name);
-        int distanceWidth = textRenderer.getWidth(distanceText);
-        
-        // Draw name
+        // Name
         matrices.push();
-        matrices.translate(-nameWidth / 2.0f, -size / TEXT_SCALE - 30, 0);
-        drawTextWithBackground(matrices, textRenderer, name, 0, 0, 0xFFFFFF);
+        LabelCache.Label name = INSTANCES.count(i) > 1
+                ? labels.cluster(INSTANCES.count(i))
+                : labels.name(INSTANCES.waypoint(i));
+        matrices.translate(name.centreX, -size / TEXT_SCALE - 30, 0);
+        addLabel(matrices, textRenderer, name, 0xFFFFFF);
         matrices.pop();
         
-        // Draw distance
+        // Distance
         matrices.push();
-        matrices.translate(-distanceWidth / 2.0f, -size / TEXT_SCALE - 15, 0);
-        drawTextWithBackground(matrices, textRenderer, distanceText, 0, 0, 0xCCCCCC);
+        LabelCache.Label distanceLabel = labels.distance(INSTANCES.distance(i));
+        matrices.translate(distanceLabel.centreX, -size / TEXT_SCALE - 15, 0);
+        addLabel(matrices, textRenderer, distanceLabel, 0xCCCCCC);
         matrices.pop();
-        
-        matrices.pop(); // Text scaling
 
-        matrices.pop(); // Waypoint transform
+        matrices.pop();
     }
 
-    private static void drawTextWithBackground(MatrixStack matrices, TextRenderer textRenderer, 
-                                             String text, int x, int y, int color) {
-        int width = textRenderer.getWidth(text);
-        int height = textRenderer.fontHeight;
-        
+    private static void addLabel(MatrixStack matrices, TextRenderer textRenderer, LabelCache.Label label, int color) {
         Matrix4f matrix = matrices.peek().getPositionMatrix();
-        
-        // Draw background
-        Tessellator tessellator = Tessellator.getInstance();
-        BufferBuilder buffer = tessellator.getBuffer();
-        buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
-        buffer.vertex(matrix, x - 2, y - 1, 0).color(0, 0, 0, 128).next();
-        buffer.vertex(matrix, x - 2, y + height + 1, 0).color(0, 0, 0, 128).next();
-        buffer.vertex(matrix, x + width + 2, y + height + 1, 0).color(0, 0, 0, 128).next();
-        buffer.vertex(matrix, x + width + 2, y - 1, 0).color(0, 0, 0, 128).next();
-        tessellator.draw();
-        
-        // Draw text
-        textRenderer.draw(text, x, y, color, false, matrices.peek().getPositionMatrix(), 
-                         MinecraftClient.getInstance().getBufferBuilders().getEntityVertexConsumers(), 
+        MarkerGeometry.labelBackground(LABEL_BUFFER, matrix, 0, 0, label.width, textRenderer.fontHeight);
+        textRenderer.draw(label.text, 0, 0, color, false, matrix, TEXT_CONSUMERS,
                          TextRenderer.TextLayerType.NORMAL, 0, 15728880);
     }
-
-    public static void renderWaypointBeam(MatrixStack matrices, Camera camera, Waypoint waypoint) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client.player == null || client.world == null) {
-            return;
-        }
-
-        Vec3d cameraPos = camera.getPos();
-        Vec3d waypointPos = new Vec3d(waypoint.getX() + 0.5, waypoint.getY(), waypoint.getZ() + 0.5);
-        
-        double distance = cameraPos.distanceTo(waypointPos);
-        if (distance > MAX_RENDER_DISTANCE) {
-            return;
-        }
-
-        matrices.push();
-
-        // Translate to waypoint position
-        matrices.translate(waypointPos.x - cameraPos.x, waypointPos.y - cameraPos.y, waypointPos.z - cameraPos.z);
-
-        Matrix4f matrix = matrices.peek().getPositionMatrix();
-        int color = waypoint.getColor();
-        float r = ((color >> 16) & 0xFF) / 255.0f;
-        float g = ((color >> 8) & 0xFF) / 255.0f;
-        float b = (color & 0xFF) / 255.0f;
-        float a = 0.4f;
-
-        // Draw beam from bedrock to build limit
-        Tessellator tessellator = Tessellator.getInstance();
-        BufferBuilder buffer = tessellator.getBuffer();
-        
-        RenderSystem.enableBlend();
-        RenderSystem.defaultBlendFunc();
-        RenderSystem.disableDepthTest();
-        
-        buffer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR);
-        
-        float beamWidth = 0.2f;
-        float yMin = (float)(-64 - waypointPos.y);  // From bedrock
-        float yMax = (float)(320 - waypointPos.y);  // To build limit
-        
-        // Four sides of the beam
-        // North face
-        buffer.vertex(matrix, -beamWidth, yMin, -beamWidth).color(r, g, b, a).next();
-        buffer.vertex(matrix, -beamWidth, yMax, -beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, beamWidth, yMax, -beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, beamWidth, yMin, -beamWidth).color(r, g, b, a).next();
-        
-        // South face
-        buffer.vertex(matrix, beamWidth, yMin, beamWidth).color(r, g, b, a).next();
-        buffer.vertex(matrix, beamWidth, yMax, beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, -beamWidth, yMax, beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, -beamWidth, yMin, beamWidth).color(r, g, b, a).next();
-        
-        // East face
-        buffer.vertex(matrix, beamWidth, yMin, -beamWidth).color(r, g, b, a).next();
-        buffer.vertex(matrix, beamWidth, yMax, -beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, beamWidth, yMax, beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, beamWidth, yMin, beamWidth).color(r, g, b, a).next();
-        
-        // West face
-        buffer.vertex(matrix, -beamWidth, yMin, beamWidth).color(r, g, b, a).next();
-        buffer.vertex(matrix, -beamWidth, yMax, beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, -beamWidth, yMax, -beamWidth).color(r, g, b, 0).next();
-        buffer.vertex(matrix, -beamWidth, yMin, -beamWidth).color(r, g, b, a).next();
-        
-        tessellator.draw();
-        
-        RenderSystem.enableDepthTest();
-        RenderSystem.disableBlend();
-
-        matrices.pop();
-    }
 }
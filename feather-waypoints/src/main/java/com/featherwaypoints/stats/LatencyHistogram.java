@@ -0,0 +1,75 @@
+package com.featherwaypoints.stats;
+
+import java.util.Arrays;
+
+// Durations counted into power-of-two buckets of microseconds: bucket 0 is
+// under 2, bucket i covers [2^i, 2^(i+1)). Recording only bumps counters, so
+// it can run on every frame or save without allocating; percentiles are
+// read back as the upper bound of the bucket they fall in.
+public final class LatencyHistogram {
+    private static final int BUCKETS = 32;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    public synchronized void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[bucket(nanos)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        lastNanos = nanos;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getLastNanos() {
+        return lastNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public synchronized long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    // Upper bound of the bucket holding the given fraction of samples, capped
+    // at the largest sample seen; 0 when nothing was recorded
+    public synchronized long getPercentileNanos(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1.0, Math.max(0.0, fraction)) * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(maxNanos, (2L << i) * 1000 - 1);
+            }
+        }
+        return maxNanos;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        if (micros < 2) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+}
@@ -0,0 +1,60 @@
+package com.featherwaypoints.stats;
+
+import com.featherwaypoints.manager.WaypointManager;
+import com.featherwaypoints.render.RenderStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// The waypoint subsystem's numbers as lines of text, shared by the overlay
+// and the stats command. Only built while one of them is showing.
+public final class PerformanceReport {
+    private PerformanceReport() {
+    }
+
+    public static List<String> lines(WaypointManager manager, RenderStats frame, LatencyHistogram render) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Render: %s this frame, %s", millis(frame.getRenderNanos()), summary(render)));
+        lines.add(String.format("Markers: %d considered, %d drawn (%d full, %d marker, %d point), %d culled",
+                frame.getConsidered(), frame.getRendered(), frame.getFull(), frame.getMarkerOnly(),
+                frame.getPoint(), frame.getCulled()));
+        lines.add(String.format("Clusters: %d holding %d waypoints, %d beams, %d draw calls",
+                frame.getClusters(), frame.getClustered(), frame.getBeams(), frame.getDrawCalls()));
+        lines.add("Save: " + summary(manager.getSaveLatency()));
+        lines.add("Load: " + summary(manager.getLoadLatency()));
+        lines.add(String.format("Index: %d waypoints (%d in memory), %d dimensions, %d searchable",
+                manager.getWaypointCount(), manager.getHeldWaypointCount(), manager.getDimensionCount(),
+                manager.getSearchIndexSize()));
+        String shard = WaypointManager.getActiveShard();
+        String where = shard == null ? "no shard" : WaypointManager.isReady() ? shard : shard + " (loading)";
+        lines.add(String.format("Storage: %s in %s, snapshot %s, journal %s written",
+                manager.getStorageBackend().name().toLowerCase(Locale.ROOT), where,
+                bytes(manager.getSnapshotBytes()),
+                bytes(manager.getJournalBytesWritten())));
+        return lines;
+    }
+
+    private static String summary(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "no samples";
+        }
+        return String.format("%d samples, mean %s, p50 %s, p99 %s, max %s", histogram.getCount(),
+                millis(histogram.getMeanNanos()), millis(histogram.getPercentileNanos(0.5)),
+                millis(histogram.getPercentileNanos(0.99)), millis(histogram.getMaxNanos()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,341 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+// Versioned binary format for waypoint records.
+//
+// Snapshot layout: magic, version, string table (dimensions, icons, groups),
+// record count, records. Records are sorted by dimension and creation time so
+// coordinates and timestamps delta-encode into short varints. Coordinates that
+// are exact multiples of 1/1024 are stored as fixed-point deltas, anything else
+// falls back to a raw double, so the encoding is lossless.
+public final class BinaryWaypointCodec {
+    public static final int MAGIC = 0x41545057; // "ATPW"
+    public static final int VERSION = 1;
+
+    private static final int FLAG_VISIBLE = 0x01;
+    private static final int FLAG_GROUP = 0x02;
+    private static final int FLAG_STRING_ID = 0x04;
+    private static final int FLAG_RAW_X = 0x08;
+    private static final int FLAG_RAW_Y = 0x10;
+    private static final int FLAG_RAW_Z = 0x20;
+    private static final int FLAG_ICON = 0x40;
+    private static final int FLAG_BEAM = 0x80;
+
+    private static final double FIXED_SCALE = 1024.0;
+    private static final long MAX_FIXED = 1L << 52;
+
+    private BinaryWaypointCodec() {
+    }
+
+    // Snapshots
+
+    public static void writeSnapshot(DataOutput out, Collection<Waypoint> waypoints) throws IOException {
+        List<Waypoint> sorted = new ArrayList<>(waypoints);
+        sorted.sort(Comparator.comparing(BinaryWaypointCodec::dimensionOf)
+                .thenComparingLong(Waypoint::getCreatedAt));
+
+        Map<String, Integer> table = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Waypoint waypoint : sorted) {
+            intern(table, strings, dimensionOf(waypoint));
+            intern(table, strings, waypoint.getIcon());
+            intern(table, strings, waypoint.getGroup());
+        }
+
+        out.writeInt(MAGIC);
+        writeVarInt(out, VERSION);
+        writeVarInt(out, strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+
+        writeVarInt(out, sorted.size());
+        Encoder encoder = new Encoder(table);
+        for (Waypoint waypoint : sorted) {
+            encoder.write(out, waypoint);
+        }
+    }
+
+    public static List<Waypoint> readSnapshot(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a waypoint snapshot");
+        }
+        int version = readVarInt(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported waypoint snapshot version " + version);
+        }
+
+        String[] strings = new String[readCount(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        int count = readCount(in);
+        List<Waypoint> waypoints = new ArrayList<>(count);
+        Decoder decoder = new Decoder(strings);
+        for (int i = 0; i < count; i++) {
+            waypoints.add(decoder.read(in));
+        }
+        return waypoints;
+    }
+
+    // Standalone records, used by the journal: strings inline, no deltas
+
+    public static void writeRecord(DataOutput out, Waypoint waypoint) throws IOException {
+        new Encoder(null).write(out, waypoint);
+    }
+
+    public static Waypoint readRecord(DataInput in) throws IOException {
+        return new Decoder(null).read(in);
+    }
+
+    // A waypoint without a dimension is indexed as an overworld one, so it is
+    // written as one too
+    static String dimensionOf(Waypoint waypoint) {
+        String dimension = waypoint.getDimension();
+        return dimension != null ? dimension : WaypointDimension.OVERWORLD.getId();
+    }
+
+    private static void intern(Map<String, Integer> table, List<String> strings, String value) {
+        if (value != null && !table.containsKey(value)) {
+            table.put(value, strings.size());
+            strings.add(value);
+        }
+    }
+
+    private static class Encoder {
+        private final Map<String, Integer> table;
+        private long prevX;
+        private long prevY;
+        private long prevZ;
+        private long prevCreatedAt;
+
+        Encoder(Map<String, Integer> table) {
+            this.table = table;
+        }
+
+        void write(DataOutput out, Waypoint waypoint) throws IOException {
+            UUID uuid = parseUuid(waypoint.getId());
+            int flags = 0;
+            if (waypoint.isVisible()) flags |= FLAG_VISIBLE;
+            if (waypoint.getGroup() != null) flags |= FLAG_GROUP;
+            if (waypoint.getIcon() != null) flags |= FLAG_ICON;
+            if (uuid == null) flags |= FLAG_STRING_ID;
+            if (!isFixed(waypoint.getX())) flags |= FLAG_RAW_X;
+            if (!isFixed(waypoint.getY())) flags |= FLAG_RAW_Y;
+            if (!isFixed(waypoint.getZ())) flags |= FLAG_RAW_Z;
+            if (waypoint.hasBeam()) flags |= FLAG_BEAM;
+            out.writeByte(flags);
+
+            if (uuid != null) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            } else {
+                writeString(out, waypoint.getId());
+            }
+            writeString(out, waypoint.getName() == null ? "" : waypoint.getName());
+            writeTableString(out, dimensionOf(waypoint));
+
+            prevX = writeCoordinate(out, waypoint.getX(), prevX, (flags & FLAG_RAW_X) != 0);
+            prevY = writeCoordinate(out, waypoint.getY(), prevY, (flags & FLAG_RAW_Y) != 0);
+            prevZ = writeCoordinate(out, waypoint.getZ(), prevZ, (flags & FLAG_RAW_Z) != 0);
+
+            out.writeInt(waypoint.getColor());
+            if ((flags & FLAG_ICON) != 0) {
+                writeTableString(out, waypoint.getIcon());
+            }
+            if ((flags & FLAG_GROUP) != 0) {
+                writeTableString(out, waypoint.getGroup());
+            }
+
+            writeVarLong(out, zigZag(waypoint.getCreatedAt() - prevCreatedAt));
+            prevCreatedAt = waypoint.getCreatedAt();
+        }
+
+        private void writeTableString(DataOutput out, String value) throws IOException {
+            if (table == null) {
+                writeString(out, value);
+            } else {
+                writeVarInt(out, table.get(value));
+            }
+        }
+
+        private long writeCoordinate(DataOutput out, double value, long previous, boolean raw) throws IOException {
+            if (raw) {
+                out.writeDouble(value);
+                return previous;
+            }
+            long fixed = (long) (value * FIXED_SCALE);
+            writeVarLong(out, zigZag(fixed - previous));
+            return fixed;
+        }
+    }
+
+    private static class Decoder {
+        private final String[] table;
+        private long prevX;
+        private long prevY;
+        private long prevZ;
+        private long prevCreatedAt;
+
+        Decoder(String[] table) {
+            this.table = table;
+        }
+
+        Waypoint read(DataInput in) throws IOException {
+            int flags = in.readUnsignedByte();
+
+            String id;
+            if ((flags & FLAG_STRING_ID) != 0) {
+                id = readString(in);
+            } else {
+                id = new UUID(in.readLong(), in.readLong()).toString();
+            }
+            String name = readString(in);
+            String dimension = readTableString(in);
+
+            double x;
+            double y;
+            double z;
+            if ((flags & FLAG_RAW_X) != 0) {
+                x = in.readDouble();
+            } else {
+                prevX += unZigZag(readVarLong(in));
+                x = prevX / FIXED_SCALE;
+            }
+            if ((flags & FLAG_RAW_Y) != 0) {
+                y = in.readDouble();
+            } else {
+                prevY += unZigZag(readVarLong(in));
+                y = prevY / FIXED_SCALE;
+            }
+            if ((flags & FLAG_RAW_Z) != 0) {
+                z = in.readDouble();
+            } else {
+                prevZ += unZigZag(readVarLong(in));
+                z = prevZ / FIXED_SCALE;
+            }
+
+            int color = in.readInt();
+            String icon = (flags & FLAG_ICON) != 0 ? readTableString(in) : null;
+            String group = (flags & FLAG_GROUP) != 0 ? readTableString(in) : null;
+
+            prevCreatedAt += unZigZag(readVarLong(in));
+
+            Waypoint waypoint = new Waypoint(id, name, x, y, z, dimension, color, icon, group,
+                    (flags & FLAG_VISIBLE) != 0, prevCreatedAt);
+            waypoint.setBeam((flags & FLAG_BEAM) != 0);
+            return waypoint;
+        }
+
+        private String readTableString(DataInput in) throws IOException {
+            if (table == null) {
+                return readString(in);
+            }
+            int index = readVarInt(in);
+            if (index < 0 || index >= table.length) {
+                throw new IOException("Bad string table index " + index);
+            }
+            return table[index];
+        }
+    }
+
+    // Encoding helpers
+
+    private static boolean isFixed(double value) {
+        double scaled = value * FIXED_SCALE;
+        return scaled == Math.rint(scaled) && Math.abs(scaled) < MAX_FIXED;
+    }
+
+    private static UUID parseUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            // Only accept the canonical lowercase form so the round trip is exact
+            return Objects.equals(uuid.toString(), id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Varint too long");
+        }
+        return (int) value;
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0) {
+            throw new IOException("Bad record count " + count);
+        }
+        return count;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > (1 << 20)) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,14 @@
+package com.featherwaypoints.storage;
+
+// What an import does with a waypoint that lies within the duplicate radius
+// of one already there, in the same dimension
+public enum DuplicatePolicy {
+    // Import it anyway
+    KEEP,
+    // Leave it out
+    SKIP,
+    // Fold its beam, visibility and group into the existing waypoint
+    MERGE,
+    // Import it into a "duplicates" group for review
+    FLAG
+}
@@ -0,0 +1,66 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Keeps every waypoint in one JSON list, in the same format as the old
+// waypoints.json and the export. JSON cannot be appended to, so every
+// persist rewrites the whole file.
+public class JsonWaypointStore implements WaypointStore {
+    private static final Type LIST_TYPE = new TypeToken<List<Waypoint>>(){}.getType();
+
+    private final Path file;
+    private final Gson gson = new Gson();
+
+    public JsonWaypointStore(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void load(Consumer<Waypoint> sink) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<Waypoint> waypoints;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            waypoints = gson.fromJson(reader, LIST_TYPE);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid waypoints JSON format: " + e.getMessage(), e);
+        }
+        if (waypoints != null) {
+            waypoints.forEach(sink);
+        }
+    }
+
+    @Override
+    public void persist(boolean clear, Map<String, Waypoint> changes, Supplier<Collection<Waypoint>> current)
+            throws IOException {
+        List<Waypoint> waypoints = new ArrayList<>(current.get());
+        AtomicFileWriter.write(file, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(waypoints, LIST_TYPE, writer);
+            writer.flush();
+        });
+    }
+
+    @Override
+    public void close() {
+    }
+}
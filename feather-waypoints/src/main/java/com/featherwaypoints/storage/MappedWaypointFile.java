@@ -0,0 +1,425 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+import com.featherwaypoints.data.WaypointDimension;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read-only, memory-mapped waypoint file with fixed-size records, so a record
+// can be read straight from the mapping without parsing the rest of the file.
+//
+// Layout: header (magic, version), records grouped by dimension and sorted by
+// id within each dimension, string data, string offsets, dimension table, and
+// a fixed-size trailer pointing at the sections. Records whose id is not a
+// UUID sit at the end of their dimension and are found by a linear scan.
+public class MappedWaypointFile {
+    public static final int MAGIC = 0x4154504D; // "ATPM"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 40;
+    private static final int DIMENSION_ENTRY_BYTES = 16;
+    static final int RECORD_BYTES = 72;
+
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int X = 16;
+    private static final int Y = 24;
+    private static final int Z = 32;
+    private static final int CREATED_AT = 40;
+    private static final int COLOR = 48;
+    private static final int NAME = 52;
+    private static final int DIMENSION = 56;
+    private static final int ICON = 60;
+    private static final int GROUP = 64;
+    private static final int FLAGS = 68;
+
+    private static final int FLAG_VISIBLE = 0x01;
+    private static final int FLAG_STRING_ID = 0x02;
+    private static final int FLAG_BEAM = 0x04;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int stringDataOffset;
+    private final int stringIndexOffset;
+    private final String[] dimensionNames;
+    // WaypointDimension handle of each dimension in the file
+    private final int[] dimensionHandles;
+    private final int[] dimensionFirst;
+    private final int[] dimensionCount;
+    private final int[] dimensionUuidCount;
+    // Dimension, icon and group strings repeat across records, so they are decoded once
+    private final Map<Integer, String> tagCache = new ConcurrentHashMap<>();
+
+    private MappedWaypointFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int limit = buffer.limit();
+        if (limit < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped waypoint file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported mapped waypoint file version " + buffer.getInt(4));
+        }
+
+        int trailer = limit - TRAILER_BYTES;
+        this.stringDataOffset = (int) buffer.getLong(trailer);
+        this.stringIndexOffset = (int) buffer.getLong(trailer + 8);
+        int dimensionTableOffset = (int) buffer.getLong(trailer + 16);
+        this.recordCount = buffer.getInt(trailer + 24);
+        int dimensions = buffer.getInt(trailer + 32);
+        if (buffer.getInt(trailer + 36) != MAGIC
+                || HEADER_BYTES + (long) recordCount * RECORD_BYTES != stringDataOffset) {
+            throw new IOException("Corrupt mapped waypoint file");
+        }
+
+        this.dimensionNames = new String[dimensions];
+        this.dimensionHandles = new int[dimensions];
+        this.dimensionFirst = new int[dimensions];
+        this.dimensionCount = new int[dimensions];
+        this.dimensionUuidCount = new int[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            int entry = dimensionTableOffset + i * DIMENSION_ENTRY_BYTES;
+            dimensionNames[i] = tag(buffer.getInt(entry));
+            dimensionHandles[i] = WaypointDimension.register(dimensionNames[i]).getHandle();
+            dimensionFirst[i] = buffer.getInt(entry + 4);
+            dimensionCount[i] = buffer.getInt(entry + 8);
+            dimensionUuidCount[i] = buffer.getInt(entry + 12);
+        }
+    }
+
+    public static MappedWaypointFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Mapped waypoint file is larger than 2 GB");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedWaypointFile(mapped);
+        }
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public int dimensionCount() {
+        return dimensionNames.length;
+    }
+
+    public String dimensionName(int dimension) {
+        return dimensionNames[dimension];
+    }
+
+    public int dimensionStart(int dimension) {
+        return dimensionFirst[dimension];
+    }
+
+    public int dimensionSize(int dimension) {
+        return dimensionCount[dimension];
+    }
+
+    // Every dimension in the file was registered when it was opened
+    public int dimensionIndex(String name) {
+        WaypointDimension dimension = name != null ? WaypointDimension.fromId(name) : null;
+        return dimension == null ? -1 : dimensionIndex(dimension);
+    }
+
+    public int dimensionIndex(WaypointDimension dimension) {
+        int handle = dimension.getHandle();
+        for (int i = 0; i < dimensionHandles.length; i++) {
+            if (dimensionHandles[i] == handle) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int dimensionOf(int record) {
+        for (int i = 0; i < dimensionNames.length; i++) {
+            if (record < dimensionFirst[i] + dimensionCount[i]) {
+                return i;
+            }
+        }
+        throw new IndexOutOfBoundsException("Record " + record);
+    }
+
+    // Returns the record index for an id, or -1
+    public int find(String id) {
+        UUID uuid = parseUuid(id);
+        for (int d = 0; d < dimensionNames.length; d++) {
+            int first = dimensionFirst[d];
+            if (uuid != null) {
+                int found = binarySearch(first, first + dimensionUuidCount[d],
+                        uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+                if (found >= 0) {
+                    return found;
+                }
+            } else {
+                for (int i = first + dimensionUuidCount[d]; i < first + dimensionCount[d]; i++) {
+                    if (id.equals(idAt(i))) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int binarySearch(int from, int to, long msb, long lsb) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = offset(mid);
+            int cmp = compareIds(buffer.getLong(base + MSB), buffer.getLong(base + LSB), msb, lsb);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String idAt(int record) {
+        int base = offset(record);
+        if ((buffer.getInt(base + FLAGS) & FLAG_STRING_ID) != 0) {
+            return string((int) buffer.getLong(base + MSB));
+        }
+        return new UUID(buffer.getLong(base + MSB), buffer.getLong(base + LSB)).toString();
+    }
+
+    boolean hasUuid(int record) {
+        return (buffer.getInt(offset(record) + FLAGS) & FLAG_STRING_ID) == 0;
+    }
+
+    long msbAt(int record) {
+        return buffer.getLong(offset(record) + MSB);
+    }
+
+    long lsbAt(int record) {
+        return buffer.getLong(offset(record) + LSB);
+    }
+
+    public Waypoint materialize(int record) {
+        int base = offset(record);
+        int icon = buffer.getInt(base + ICON);
+        int group = buffer.getInt(base + GROUP);
+        int flags = buffer.getInt(base + FLAGS);
+        Waypoint waypoint = new Waypoint(
+                idAt(record),
+                string(buffer.getInt(base + NAME)),
+                buffer.getDouble(base + X),
+                buffer.getDouble(base + Y),
+                buffer.getDouble(base + Z),
+                tag(buffer.getInt(base + DIMENSION)),
+                buffer.getInt(base + COLOR),
+                icon < 0 ? null : tag(icon),
+                group < 0 ? null : tag(group),
+                (flags & FLAG_VISIBLE) != 0,
+                buffer.getLong(base + CREATED_AT));
+        waypoint.setBeam((flags & FLAG_BEAM) != 0);
+        return waypoint;
+    }
+
+    private static int offset(int record) {
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+
+    private String tag(int index) {
+        return tagCache.computeIfAbsent(index, this::string);
+    }
+
+    private String string(int index) {
+        int position = stringDataOffset + buffer.getInt(stringIndexOffset + index * 4);
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Order of records within a dimension: UUID ids by value, then any others
+    static int compareRecordOrder(Waypoint a, Waypoint b) {
+        UUID ua = parseUuid(a.getId());
+        UUID ub = parseUuid(b.getId());
+        if (ua == null || ub == null) {
+            return Boolean.compare(ua == null, ub == null);
+        }
+        return compareIds(ua.getMostSignificantBits(), ua.getLeastSignificantBits(),
+                ub.getMostSignificantBits(), ub.getLeastSignificantBits());
+    }
+
+    static int compareIds(long msb1, long lsb1, long msb2, long lsb2) {
+        int cmp = Long.compare(msb1, msb2);
+        return cmp != 0 ? cmp : Long.compare(lsb1, lsb2);
+    }
+
+    static UUID parseUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return Objects.equals(uuid.toString(), id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Streams records into a new mapped file. Dimensions must be added one at a
+    // time, each with its UUID records in id order followed by any others.
+    public static class Builder {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        private final DataOutputStream stringOut = new DataOutputStream(stringData);
+        private final List<Integer> stringOffsets = new ArrayList<>();
+        private final Map<String, Integer> tags = new HashMap<>();
+        private final List<int[]> dimensions = new ArrayList<>();
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+
+        private int currentDimension = -1;
+        private int recordCount;
+
+        public Builder(OutputStream stream) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        public void beginDimension(String name) {
+            currentDimension = tagIndex(name);
+            dimensions.add(new int[] {currentDimension, recordCount, 0, 0});
+        }
+
+        public void add(Waypoint waypoint) throws IOException {
+            UUID uuid = parseUuid(waypoint.getId());
+            int flags = waypoint.isVisible() ? FLAG_VISIBLE : 0;
+            if (waypoint.hasBeam()) {
+                flags |= FLAG_BEAM;
+            }
+            if (uuid != null) {
+                record.putLong(MSB, uuid.getMostSignificantBits());
+                record.putLong(LSB, uuid.getLeastSignificantBits());
+            } else {
+                record.putLong(MSB, addString(waypoint.getId()));
+                record.putLong(LSB, 0);
+                flags |= FLAG_STRING_ID;
+            }
+            record.putDouble(X, waypoint.getX());
+            record.putDouble(Y, waypoint.getY());
+            record.putDouble(Z, waypoint.getZ());
+            record.putLong(CREATED_AT, waypoint.getCreatedAt());
+            record.putInt(COLOR, waypoint.getColor());
+            record.putInt(NAME, addString(waypoint.getName() == null ? "" : waypoint.getName()));
+            record.putInt(DIMENSION, currentDimension);
+            record.putInt(ICON, waypoint.getIcon() == null ? -1 : tagIndex(waypoint.getIcon()));
+            record.putInt(GROUP, waypoint.getGroup() == null ? -1 : tagIndex(waypoint.getGroup()));
+            record.putInt(FLAGS, flags);
+            writeRecord(uuid != null);
+        }
+
+        // Copies a record from another mapped file without materializing it
+        public void copy(MappedWaypointFile source, int index) throws IOException {
+            int base = offset(index);
+            source.buffer.get(base, record.array(), 0, RECORD_BYTES);
+            int flags = record.getInt(FLAGS);
+            if ((flags & FLAG_STRING_ID) != 0) {
+                record.putLong(MSB, copyString(source, (int) record.getLong(MSB)));
+            }
+            record.putInt(NAME, copyString(source, record.getInt(NAME)));
+            record.putInt(DIMENSION, currentDimension);
+            int icon = record.getInt(ICON);
+            record.putInt(ICON, icon < 0 ? -1 : tagIndex(source.tag(icon)));
+            int group = record.getInt(GROUP);
+            record.putInt(GROUP, group < 0 ? -1 : tagIndex(source.tag(group)));
+            writeRecord((flags & FLAG_STRING_ID) == 0);
+        }
+
+        private void writeRecord(boolean hasUuid) throws IOException {
+            out.write(record.array());
+            int[] dimension = dimensions.get(dimensions.size() - 1);
+            dimension[2]++;
+            if (hasUuid) {
+                dimension[3]++;
+            }
+            recordCount++;
+        }
+
+        private int tagIndex(String value) {
+            Integer index = tags.get(value);
+            if (index == null) {
+                index = addString(value);
+                tags.put(value, index);
+            }
+            return index;
+        }
+
+        private int addString(String value) {
+            return addStringBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private int copyString(MappedWaypointFile source, int index) {
+            int position = source.stringDataOffset + source.buffer.getInt(source.stringIndexOffset + index * 4);
+            byte[] bytes = new byte[source.buffer.getInt(position)];
+            source.buffer.get(position + 4, bytes);
+            return addStringBytes(bytes);
+        }
+
+        private int addStringBytes(byte[] bytes) {
+            stringOffsets.add(stringData.size());
+            try {
+                stringOut.writeInt(bytes.length);
+                stringOut.write(bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return stringOffsets.size() - 1;
+        }
+
+        public int size() {
+            return recordCount;
+        }
+
+        public void finish() throws IOException {
+            long stringDataOffset = HEADER_BYTES + (long) recordCount * RECORD_BYTES;
+            stringData.writeTo(out);
+            long stringIndexOffset = stringDataOffset + stringData.size();
+            for (int offset : stringOffsets) {
+                out.writeInt(offset);
+            }
+            long dimensionTableOffset = stringIndexOffset + 4L * stringOffsets.size();
+            for (int[] dimension : dimensions) {
+                for (int value : dimension) {
+                    out.writeInt(value);
+                }
+            }
+
+            out.writeLong(stringDataOffset);
+            out.writeLong(stringIndexOffset);
+            out.writeLong(dimensionTableOffset);
+            out.writeInt(recordCount);
+            out.writeInt(stringOffsets.size());
+            out.writeInt(dimensions.size());
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+    }
+}
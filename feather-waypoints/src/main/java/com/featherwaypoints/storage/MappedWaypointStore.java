@@ -0,0 +1,266 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Cold tier of the MAPPED storage backend. Records live in a MappedWaypointFile
+// and are materialized on demand. A record is "shadowed" once the in-memory
+// tier takes it over (loaded, edited or removed), so each waypoint is served
+// from exactly one place.
+//
+// Each compaction writes a new generation file (waypoints-<n>.map) instead of
+// replacing the current one, because a file that is still mapped cannot be
+// replaced or deleted on every platform.
+public class MappedWaypointStore {
+    private static final Pattern FILE_NAME = Pattern.compile("waypoints-(\\d+)\\.map");
+
+    private final MappedWaypointFile mapped;
+    private final BitSet shadowed = new BitSet();
+    private final int[] liveCount;
+    private int live;
+
+    private MappedWaypointStore(MappedWaypointFile mapped) {
+        this.mapped = mapped;
+        this.liveCount = new int[mapped.dimensionCount()];
+        for (int d = 0; d < liveCount.length; d++) {
+            liveCount[d] = mapped.dimensionSize(d);
+        }
+        this.live = mapped.size();
+    }
+
+    public static MappedWaypointStore open(Path file) throws IOException {
+        return new MappedWaypointStore(MappedWaypointFile.open(file));
+    }
+
+    public static Path generationFile(Path directory, long generation) {
+        return directory.resolve("waypoints-" + generation + ".map");
+    }
+
+    // Highest generation present in the directory, or -1
+    public static long latestGeneration(Path directory) {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "waypoints-*.map")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    latest = Math.max(latest, Long.parseLong(matcher.group(1)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Failed to list mapped waypoint files: " + e.getMessage());
+        }
+        return latest;
+    }
+
+    // Best effort: files still mapped by this process are retried on the next call
+    public static void deleteOlderGenerations(Path directory, long current) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "waypoints-*.map")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) < current) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Still mapped; try again after the next compaction
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Failed to clean up mapped waypoint files: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return live;
+    }
+
+    public synchronized int size(String dimension) {
+        int d = mapped.dimensionIndex(dimension);
+        return d < 0 ? 0 : liveCount[d];
+    }
+
+    // Dimensions that still have live records
+    public synchronized Set<String> dimensions() {
+        Set<String> dimensions = new TreeSet<>();
+        for (int d = 0; d < liveCount.length; d++) {
+            if (liveCount[d] > 0) {
+                dimensions.add(mapped.dimensionName(d));
+            }
+        }
+        return dimensions;
+    }
+
+    public boolean contains(String id) {
+        return mapped.find(id) >= 0;
+    }
+
+    public Waypoint get(String id) {
+        int index = mapped.find(id);
+        return index >= 0 && isLive(index) ? mapped.materialize(index) : null;
+    }
+
+    private synchronized boolean isLive(int index) {
+        return !shadowed.get(index);
+    }
+
+    // Returns true if the record was still being served from the file
+    public synchronized boolean shadow(String id) {
+        int index = mapped.find(id);
+        if (index < 0 || shadowed.get(index)) {
+            return false;
+        }
+        shadowed.set(index);
+        liveCount[mapped.dimensionOf(index)]--;
+        live--;
+        return true;
+    }
+
+    // Hands a record back to the file once the in-memory copy matches it again
+    public synchronized void unshadow(String id) {
+        int index = mapped.find(id);
+        if (index >= 0 && shadowed.get(index)) {
+            shadowed.clear(index);
+            liveCount[mapped.dimensionOf(index)]++;
+            live++;
+        }
+    }
+
+    public synchronized void shadowAll() {
+        shadowed.set(0, mapped.size());
+        Arrays.fill(liveCount, 0);
+        live = 0;
+    }
+
+    public synchronized BitSet shadowedSnapshot() {
+        return (BitSet) shadowed.clone();
+    }
+
+    // Materializes the live records of a dimension, or of every dimension when null
+    public Stream<Waypoint> stream(String dimension) {
+        IntStream indices;
+        if (dimension == null) {
+            indices = IntStream.range(0, mapped.size());
+        } else {
+            int d = mapped.dimensionIndex(dimension);
+            if (d < 0 || size(dimension) == 0) {
+                return Stream.empty();
+            }
+            int start = mapped.dimensionStart(d);
+            indices = IntStream.range(start, start + mapped.dimensionSize(d));
+        }
+        return indices.filter(this::isLive).mapToObj(mapped::materialize);
+    }
+
+    // Moves every live record of a dimension into memory
+    public List<Waypoint> promote(String dimension) {
+        List<Waypoint> promoted = new ArrayList<>();
+        int d = mapped.dimensionIndex(dimension);
+        if (d < 0) {
+            return promoted;
+        }
+
+        int start = mapped.dimensionStart(d);
+        synchronized (this) {
+            for (int i = start; i < start + mapped.dimensionSize(d); i++) {
+                if (!shadowed.get(i)) {
+                    promoted.add(mapped.materialize(i));
+                    shadowed.set(i);
+                }
+            }
+            liveCount[d] -= promoted.size();
+            live -= promoted.size();
+        }
+        return promoted;
+    }
+
+    // Writes a new mapped file holding the records of previous (may be null) that
+    // are not in skip, plus the in-memory waypoints, merged so each dimension
+    // stays in id order.
+    public static int write(OutputStream out, MappedWaypointStore previous, BitSet skip,
+                            Collection<Waypoint> inMemory) throws IOException {
+        Map<String, List<Waypoint>> byDimension = new TreeMap<>();
+        for (Waypoint waypoint : inMemory) {
+            byDimension.computeIfAbsent(BinaryWaypointCodec.dimensionOf(waypoint), key -> new ArrayList<>()).add(waypoint);
+        }
+        for (List<Waypoint> waypoints : byDimension.values()) {
+            waypoints.sort(MappedWaypointFile::compareRecordOrder);
+        }
+
+        MappedWaypointFile source = previous != null ? previous.mapped : null;
+        Set<String> dimensions = new TreeSet<>(byDimension.keySet());
+        if (source != null) {
+            for (int d = 0; d < source.dimensionCount(); d++) {
+                dimensions.add(source.dimensionName(d));
+            }
+        }
+
+        MappedWaypointFile.Builder builder = new MappedWaypointFile.Builder(out);
+        for (String dimension : dimensions) {
+            builder.beginDimension(dimension);
+            List<Waypoint> hot = byDimension.getOrDefault(dimension, List.of());
+            int d = source != null ? source.dimensionIndex(dimension) : -1;
+            int cold = d >= 0 ? source.dimensionStart(d) : 0;
+            int coldEnd = d >= 0 ? cold + source.dimensionSize(d) : 0;
+            int h = 0;
+
+            // UUID records from both sides, merged in id order
+            while (true) {
+                boolean coldUuid = cold < coldEnd && source.hasUuid(cold);
+                boolean hotUuid = h < hot.size() && MappedWaypointFile.parseUuid(hot.get(h).getId()) != null;
+                if (!coldUuid && !hotUuid) {
+                    break;
+                }
+                if (coldUuid && skip.get(cold)) {
+                    cold++;
+                    continue;
+                }
+                int cmp = !coldUuid ? 1 : !hotUuid ? -1 : compare(source, cold, hot.get(h));
+                if (cmp < 0) {
+                    builder.copy(source, cold++);
+                } else {
+                    if (cmp == 0) {
+                        cold++;
+                    }
+                    builder.add(hot.get(h++));
+                }
+            }
+
+            // Records with non-UUID ids
+            for (; cold < coldEnd; cold++) {
+                if (!skip.get(cold)) {
+                    builder.copy(source, cold);
+                }
+            }
+            for (; h < hot.size(); h++) {
+                builder.add(hot.get(h));
+            }
+        }
+        builder.finish();
+        return builder.size();
+    }
+
+    private static int compare(MappedWaypointFile source, int record, Waypoint waypoint) {
+        UUID uuid = MappedWaypointFile.parseUuid(waypoint.getId());
+        return MappedWaypointFile.compareIds(source.msbAt(record), source.lsbAt(record),
+                uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+}
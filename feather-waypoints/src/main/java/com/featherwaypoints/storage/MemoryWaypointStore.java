@@ -0,0 +1,63 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Keeps waypoints in memory only, so nothing outlives the store. Holds
+// copies, so later edits to the manager's waypoints only show up here once
+// they are persisted. Handing the same store to a new manager restores
+// what was persisted.
+public class MemoryWaypointStore implements WaypointStore {
+    private final Map<String, Waypoint> waypoints = new LinkedHashMap<>();
+
+    public MemoryWaypointStore() {
+    }
+
+    public MemoryWaypointStore(Collection<Waypoint> initial) {
+        for (Waypoint waypoint : initial) {
+            waypoints.put(waypoint.getId(), waypoint.copy());
+        }
+    }
+
+    @Override
+    public void load(Consumer<Waypoint> sink) {
+        List<Waypoint> copies;
+        synchronized (this) {
+            copies = new ArrayList<>(waypoints.size());
+            for (Waypoint waypoint : waypoints.values()) {
+                copies.add(waypoint.copy());
+            }
+        }
+        copies.forEach(sink);
+    }
+
+    @Override
+    public synchronized void persist(boolean clear, Map<String, Waypoint> changes,
+                                     Supplier<Collection<Waypoint>> current) {
+        if (clear) {
+            waypoints.clear();
+        }
+        for (Map.Entry<String, Waypoint> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                waypoints.remove(change.getKey());
+            } else {
+                waypoints.put(change.getKey(), change.getValue().copy());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return waypoints.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,8 @@
+package com.featherwaypoints.storage;
+
+public enum PersistenceMode {
+    // Rewrite the whole snapshot on every save
+    SNAPSHOT,
+    // Append changed records to a journal and compact it into the snapshot in the background
+    JOURNAL
+}
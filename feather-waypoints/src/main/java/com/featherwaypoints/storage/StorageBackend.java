@@ -0,0 +1,9 @@
+package com.featherwaypoints.storage;
+
+public enum StorageBackend {
+    // Every waypoint is held as an object in memory
+    HEAP,
+    // Waypoints stay in a memory-mapped file; only the active dimension and
+    // recently edited waypoints are held in memory
+    MAPPED
+}
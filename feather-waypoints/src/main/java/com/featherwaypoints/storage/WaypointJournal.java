@@ -0,0 +1,233 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Append-only log of waypoint mutations, replayed over the last snapshot on load.
+// Each record is framed as [length][crc32][payload] so a torn tail left by a
+// crash can be detected and cut off. Payloads start with an op byte followed
+// by a BinaryWaypointCodec record; older journals hold JSON payloads, which
+// are still replayed so they can be migrated.
+public class WaypointJournal implements Closeable {
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final int OP_PUT = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_CLEAR = 3;
+    private static final int LEGACY_JSON_PAYLOAD = '{';
+
+    public interface ReplayTarget {
+        void put(Waypoint waypoint);
+
+        void remove(String id);
+
+        void clear();
+    }
+
+    // Payload of journals written before the binary format
+    private static class Record {
+        @SerializedName("op")
+        String op;
+
+        @SerializedName("id")
+        String id;
+
+        @SerializedName("waypoint")
+        Waypoint waypoint;
+    }
+
+    private final Path file;
+    private final Gson gson = new Gson();
+    private FileChannel channel;
+    private long size;
+    private long bytesWritten;
+
+    public WaypointJournal(Path file) {
+        this.file = file;
+    }
+
+    // Applies every intact record to the target and truncates anything after the
+    // last one. Returns the number of records replayed.
+    public int replay(ReplayTarget target) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        int records = 0;
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+
+        while (data.remaining() >= HEADER_BYTES) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || length > data.remaining()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            data.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            if (!apply(payload, target)) {
+                break;
+            }
+
+            records++;
+            validLength = data.position();
+        }
+
+        if (validLength < data.capacity()) {
+            System.err.println("Discarding " + (data.capacity() - validLength) + " bytes of torn waypoint journal");
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+                truncate.force(true);
+            }
+        }
+        return records;
+    }
+
+    private boolean apply(byte[] payload, ReplayTarget target) {
+        if (payload[0] == LEGACY_JSON_PAYLOAD) {
+            try {
+                Record record = gson.fromJson(new String(payload, StandardCharsets.UTF_8), Record.class);
+                return record != null && applyLegacy(record, target);
+            } catch (JsonParseException e) {
+                return false;
+            }
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+        try {
+            switch (payload[0]) {
+                case OP_PUT -> target.put(BinaryWaypointCodec.readRecord(in));
+                case OP_REMOVE -> target.remove(BinaryWaypointCodec.readString(in));
+                case OP_CLEAR -> target.clear();
+                default -> {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean applyLegacy(Record record, ReplayTarget target) {
+        if ("put".equals(record.op) && record.waypoint != null) {
+            target.put(record.waypoint);
+        } else if ("remove".equals(record.op) && record.id != null) {
+            target.remove(record.id);
+        } else if ("clear".equals(record.op)) {
+            target.clear();
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // Appends one batch of changes and forces it to disk. A null value in
+    // changes means the waypoint was removed.
+    public void append(boolean clear, Map<String, Waypoint> changes) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * (changes.size() + 1));
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        DataOutputStream batchOut = new DataOutputStream(batch);
+        CRC32 crc = new CRC32();
+
+        if (clear) {
+            payloadOut.writeByte(OP_CLEAR);
+            writeFrame(batchOut, payload, crc);
+        }
+        for (Map.Entry<String, Waypoint> change : changes.entrySet()) {
+            Waypoint waypoint = change.getValue();
+            if (waypoint == null) {
+                payloadOut.writeByte(OP_REMOVE);
+                BinaryWaypointCodec.writeString(payloadOut, change.getKey());
+            } else {
+                payloadOut.writeByte(OP_PUT);
+                BinaryWaypointCodec.writeRecord(payloadOut, waypoint);
+            }
+            writeFrame(batchOut, payload, crc);
+        }
+        writeBytes(ByteBuffer.wrap(batch.toByteArray()));
+    }
+
+    private static void writeFrame(DataOutputStream out, ByteArrayOutputStream payload, CRC32 crc) throws IOException {
+        byte[] bytes = payload.toByteArray();
+        payload.reset();
+        crc.reset();
+        crc.update(bytes);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    private void writeBytes(ByteBuffer batch) throws IOException {
+        FileChannel out = channel();
+        int written = batch.remaining();
+        while (batch.hasRemaining()) {
+            out.write(batch, size + (written - batch.remaining()));
+        }
+        out.force(false);
+        size += written;
+        bytesWritten += written;
+    }
+
+    // Called after a snapshot has captured everything in the journal
+    public void truncate() throws IOException {
+        FileChannel out = channel();
+        out.truncate(0);
+        out.force(true);
+        size = 0;
+    }
+
+    public long size() throws IOException {
+        if (channel == null) {
+            return Files.exists(file) ? Files.size(file) : 0;
+        }
+        return size;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            size = channel.size();
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
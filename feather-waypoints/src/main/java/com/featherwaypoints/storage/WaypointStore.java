@@ -0,0 +1,26 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Where a WaypointManager keeps its waypoints when it is given one instead of
+// using the built-in snapshot and journal. load is called once when the
+// manager starts; persist is then called from the write-behind thread, one
+// batch at a time.
+public interface WaypointStore extends Closeable {
+    // Hands every stored waypoint to sink
+    void load(Consumer<Waypoint> sink) throws IOException;
+
+    // Saves one batch of changes. A null value in changes means the waypoint
+    // was removed, and clear means everything stored before the batch is gone.
+    // current returns every waypoint the manager holds, for stores that
+    // rewrite everything rather than apply the changes.
+    void persist(boolean clear, Map<String, Waypoint> changes, Supplier<Collection<Waypoint>> current)
+            throws IOException;
+}
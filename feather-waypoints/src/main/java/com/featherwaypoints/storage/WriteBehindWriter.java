@@ -0,0 +1,136 @@
+package com.featherwaypoints.storage;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Runs saves on a single background thread. Every markDirty() within one
+// debounce window is coalesced into a single save.
+public class WriteBehindWriter {
+    public interface SaveTask {
+        void save() throws IOException;
+    }
+
+    private final SaveTask saveTask;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+
+    private long requestedGeneration;
+    private long persistedGeneration;
+    private ScheduledFuture<?> pendingSave;
+    private boolean closed;
+
+    public WriteBehindWriter(String threadName, long debounceMillis, SaveTask saveTask) {
+        this.saveTask = saveTask;
+        this.debounceMillis = debounceMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void markDirty() {
+        synchronized (lock) {
+            requestedGeneration++;
+            if (pendingSave == null && !closed) {
+                pendingSave = executor.schedule(this::runSave, debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public boolean isDirty() {
+        synchronized (lock) {
+            return persistedGeneration < requestedGeneration;
+        }
+    }
+
+    // Saves immediately instead of waiting for the debounce window and blocks until done.
+    public void flush() {
+        Future<?> save;
+        synchronized (lock) {
+            if (persistedGeneration >= requestedGeneration) {
+                return;
+            }
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+                pendingSave = null;
+            }
+            if (closed) {
+                runSave();
+                return;
+            }
+            save = executor.submit(this::runSave);
+        }
+
+        try {
+            save.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Failed to flush waypoints: " + e.getCause().getMessage());
+        }
+    }
+
+    // Waits until every change marked before this call has been written.
+    public boolean awaitPersisted(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            long target = requestedGeneration;
+            while (persistedGeneration < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    public void close() {
+        flush();
+        synchronized (lock) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSave() {
+        long target;
+        synchronized (lock) {
+            pendingSave = null;
+            target = requestedGeneration;
+        }
+
+        try {
+            saveTask.save();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to save waypoints: " + e.getMessage());
+            synchronized (lock) {
+                // Keep the changes dirty and try again after another window
+                if (pendingSave == null && !closed) {
+                    pendingSave = executor.schedule(this::runSave, debounceMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            return;
+        }
+
+        synchronized (lock) {
+            persistedGeneration = Math.max(persistedGeneration, target);
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.featherwaypoints.render;
+
+import com.featherwaypoints.data.Waypoint;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BufferedMarkerPassTest {
+    @Test
+    void emitsEveryMarkerInTheGeometryOfItsTier() {
+        MarkerInstances instances = new MarkerInstances();
+        add(instances, 0xFF0000, 10, 0, 0, MarkerTier.FULL, 1.0f);
+        add(instances, 0x00FF00, 0, 20, 0, MarkerTier.MARKER, 1.0f);
+        add(instances, 0x0000FF, 0, 0, 5, MarkerTier.POINT, 2.0f);
+
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        RecordingVertexConsumer outline = new RecordingVertexConsumer();
+        BufferedMarkerPass.emit(fill, outline, new Matrix4f(), instances, new Matrix4f(), new Quaternionf());
+
+        assertEquals(2 * MarkerGeometry.DIAMOND_FILL_VERTICES + MarkerGeometry.POINT_VERTICES, fill.count());
+        assertEquals(2 * MarkerGeometry.DIAMOND_OUTLINE_VERTICES, outline.count());
+
+        // Markers are flipped to face the camera and scaled to their tier's size
+        RecordingVertexConsumer.Vertex full = fill.get(0);
+        assertEquals(10, full.x(), 1e-4);
+        assertEquals(-MarkerGeometry.MARKER_SIZE, full.y(), 1e-4);
+        assertEquals(255, full.red());
+        RecordingVertexConsumer.Vertex marker = fill.get(MarkerGeometry.DIAMOND_FILL_VERTICES);
+        assertEquals(20 - MarkerGeometry.MARKER_SIZE, marker.y(), 1e-4);
+        assertEquals(255, marker.green());
+        RecordingVertexConsumer.Vertex point = fill.get(2 * MarkerGeometry.DIAMOND_FILL_VERTICES);
+        assertEquals(-2.0f * MarkerGeometry.POINT_SIZE, point.y(), 1e-4);
+        assertEquals(5, point.z(), 1e-4);
+        assertEquals(255, point.blue());
+    }
+
+    @Test
+    void emitsNothingWithoutMarkers() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        RecordingVertexConsumer outline = new RecordingVertexConsumer();
+        BufferedMarkerPass.emit(fill, outline, new Matrix4f(), new MarkerInstances(), new Matrix4f(), new Quaternionf());
+
+        assertEquals(0, fill.count());
+        assertEquals(0, outline.count());
+    }
+
+    @Test
+    void markerTransformFollowsTheView() {
+        MarkerInstances instances = new MarkerInstances();
+        add(instances, 0xFFFFFF, 1, 2, 3, MarkerTier.MARKER, 0.5f);
+        Matrix4f view = new Matrix4f().translate(100, 0, 0);
+
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        MarkerGeometry.point(fill, MarkerPass.markerTransform(new Matrix4f(), view, new Quaternionf(), instances, 0),
+                1.0f, 0xFFFFFF, 1.0f);
+
+        // Top corner of the unit quad, scaled by half the marker size and flipped
+        assertEquals(101, fill.get(0).x(), 1e-4);
+        assertEquals(2 - 0.5f * MarkerGeometry.MARKER_SIZE, fill.get(0).y(), 1e-4);
+        assertEquals(3, fill.get(0).z(), 1e-4);
+    }
+
+    private static void add(MarkerInstances instances, int color, double x, double y, double z,
+                            MarkerTier tier, float scale) {
+        Waypoint waypoint = new Waypoint("Marker", x, y, z, "minecraft:overworld", color, null, null);
+        instances.add(waypoint, 1, x, y, z, Double.NaN, Double.NaN);
+        instances.setDetail(instances.size() - 1, tier, scale, Math.sqrt(x * x + y * y + z * z));
+    }
+}
@@ -0,0 +1,124 @@
+package com.featherwaypoints.render;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkerGeometryTest {
+    private static final int RED = 0xFF0000;
+
+    @Test
+    void diamondIsOneQuadAndFourOutlineSegments() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        RecordingVertexConsumer outline = new RecordingVertexConsumer();
+        MarkerGeometry.diamond(fill, outline, new Matrix4f(), 2.0f, RED, MarkerGeometry.MARKER_ALPHA);
+
+        assertEquals(MarkerGeometry.DIAMOND_FILL_VERTICES, fill.count());
+        assertEquals(MarkerGeometry.DIAMOND_OUTLINE_VERTICES, outline.count());
+        assertPosition(fill.get(0), 0, 2);
+        assertPosition(fill.get(1), -2, 0);
+        assertPosition(fill.get(2), 0, -2);
+        assertPosition(fill.get(3), 2, 0);
+        for (RecordingVertexConsumer.Vertex vertex : fill.vertices) {
+            assertColor(vertex, 255, 0, 0, 204);
+        }
+        for (RecordingVertexConsumer.Vertex vertex : outline.vertices) {
+            assertColor(vertex, 255, 255, 255, 255);
+        }
+    }
+
+    @Test
+    void pointIsOneQuadWithoutOutline() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        MarkerGeometry.point(fill, new Matrix4f(), 1.0f, RED, MarkerGeometry.MARKER_ALPHA);
+
+        assertEquals(MarkerGeometry.POINT_VERTICES, fill.count());
+    }
+
+    @Test
+    void vertexCountsPerTier() {
+        for (MarkerTier tier : MarkerTier.values()) {
+            RecordingVertexConsumer fill = new RecordingVertexConsumer();
+            RecordingVertexConsumer outline = new RecordingVertexConsumer();
+            MarkerGeometry.marker(fill, outline, new Matrix4f(), tier, 1.0f, RED, MarkerGeometry.MARKER_ALPHA);
+
+            if (tier == MarkerTier.POINT) {
+                assertEquals(MarkerGeometry.POINT_VERTICES, fill.count(), tier.name());
+                assertEquals(0, outline.count(), tier.name());
+            } else {
+                assertEquals(MarkerGeometry.DIAMOND_FILL_VERTICES, fill.count(), tier.name());
+                assertEquals(MarkerGeometry.DIAMOND_OUTLINE_VERTICES, outline.count(), tier.name());
+            }
+        }
+    }
+
+    @Test
+    void fullTierMarkerWithLabelsMatchesPerMarkerTotals() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        RecordingVertexConsumer outline = new RecordingVertexConsumer();
+        Matrix4f matrix = new Matrix4f();
+        MarkerGeometry.marker(fill, outline, matrix, MarkerTier.FULL, 1.0f, RED, MarkerGeometry.MARKER_ALPHA);
+        for (int label = 0; label < MarkerGeometry.LABELS_PER_MARKER; label++) {
+            MarkerGeometry.labelBackground(fill, matrix, 0, label * 15, 40, 9);
+        }
+
+        assertEquals(MarkerGeometry.FILL_VERTICES_PER_MARKER, fill.count());
+        assertEquals(MarkerGeometry.OUTLINE_VERTICES_PER_MARKER, outline.count());
+    }
+
+    @Test
+    void labelBackgroundPadsTheText() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        MarkerGeometry.labelBackground(fill, new Matrix4f(), 10, 20, 40, 9);
+
+        assertEquals(MarkerGeometry.LABEL_BACKGROUND_VERTICES, fill.count());
+        assertPosition(fill.get(0), 8, 19);
+        assertPosition(fill.get(2), 52, 30);
+        for (RecordingVertexConsumer.Vertex vertex : fill.vertices) {
+            assertColor(vertex, 0, 0, 0, 128);
+        }
+    }
+
+    @Test
+    void beamFadesOutTowardsTheTop() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        MarkerGeometry.beam(fill, new Matrix4f(), MarkerGeometry.BEAM_HALF_WIDTH, -64, 320, RED, 0.5f);
+
+        assertEquals(MarkerGeometry.BEAM_VERTICES, fill.count());
+        for (RecordingVertexConsumer.Vertex vertex : fill.vertices) {
+            if (vertex.y() == 320) {
+                assertEquals(0, vertex.alpha());
+            } else {
+                assertEquals(-64, vertex.y(), 1e-6);
+                assertColor(vertex, 255, 0, 0, 127);
+            }
+        }
+    }
+
+    @Test
+    void verticesGoThroughTheMatrix() {
+        RecordingVertexConsumer fill = new RecordingVertexConsumer();
+        RecordingVertexConsumer outline = new RecordingVertexConsumer();
+        Matrix4f matrix = new Matrix4f().translate(100, 64, -30).scale(3, 3, 3);
+        MarkerGeometry.diamond(fill, outline, matrix, 1.0f, RED, 1.0f);
+
+        assertPosition(fill.get(0), 100, 67);
+        assertEquals(-30, fill.get(0).z(), 1e-4);
+        assertPosition(fill.get(3), 103, 64);
+    }
+
+    private static void assertPosition(RecordingVertexConsumer.Vertex vertex, double x, double y) {
+        assertEquals(x, vertex.x(), 1e-4);
+        assertEquals(y, vertex.y(), 1e-4);
+    }
+
+    // Float colours are truncated to bytes, so allow one step either way
+    private static void assertColor(RecordingVertexConsumer.Vertex vertex, int red, int green, int blue, int alpha) {
+        assertTrue(Math.abs(vertex.red() - red) <= 1, "red " + vertex.red());
+        assertTrue(Math.abs(vertex.green() - green) <= 1, "green " + vertex.green());
+        assertTrue(Math.abs(vertex.blue() - blue) <= 1, "blue " + vertex.blue());
+        assertTrue(Math.abs(vertex.alpha() - alpha) <= 1, "alpha " + vertex.alpha());
+    }
+}
@@ -0,0 +1,90 @@
+package com.featherwaypoints.render;
+
+import net.minecraft.client.render.VertexConsumer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps every finished vertex instead of writing it to a buffer, so geometry
+// can be checked without a GPU or a render thread
+final class RecordingVertexConsumer implements VertexConsumer {
+    record Vertex(double x, double y, double z, int red, int green, int blue, int alpha) {
+    }
+
+    final List<Vertex> vertices = new ArrayList<>();
+    private double x;
+    private double y;
+    private double z;
+    private int red;
+    private int green;
+    private int blue;
+    private int alpha;
+    private boolean hasPosition;
+    private boolean hasColor;
+
+    int count() {
+        return vertices.size();
+    }
+
+    Vertex get(int i) {
+        return vertices.get(i);
+    }
+
+    @Override
+    public VertexConsumer vertex(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        hasPosition = true;
+        return this;
+    }
+
+    @Override
+    public VertexConsumer color(int red, int green, int blue, int alpha) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.alpha = alpha;
+        hasColor = true;
+        return this;
+    }
+
+    @Override
+    public VertexConsumer texture(float u, float v) {
+        throw new AssertionError("POSITION_COLOR vertices have no texture");
+    }
+
+    @Override
+    public VertexConsumer overlay(int u, int v) {
+        throw new AssertionError("POSITION_COLOR vertices have no overlay");
+    }
+
+    @Override
+    public VertexConsumer light(int u, int v) {
+        throw new AssertionError("POSITION_COLOR vertices have no light");
+    }
+
+    @Override
+    public VertexConsumer normal(float x, float y, float z) {
+        throw new AssertionError("POSITION_COLOR vertices have no normal");
+    }
+
+    @Override
+    public void next() {
+        if (!hasPosition || !hasColor) {
+            throw new AssertionError("Vertex finished without a position and a colour");
+        }
+        vertices.add(new Vertex(x, y, z, red, green, blue, alpha));
+        hasPosition = false;
+        hasColor = false;
+    }
+
+    @Override
+    public void fixedColor(int red, int green, int blue, int alpha) {
+        throw new AssertionError("Markers set their colour per vertex");
+    }
+
+    @Override
+    public void unfixColor() {
+    }
+}
@@ -0,0 +1,142 @@
+package com.featherwaypoints.storage;
+
+import com.featherwaypoints.data.Waypoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WaypointJournalTest {
+    @TempDir
+    Path directory;
+
+    // Records what a replay applies, in order
+    private static class Recorder implements WaypointJournal.ReplayTarget {
+        final List<String> applied = new ArrayList<>();
+
+        @Override
+        public void put(Waypoint waypoint) {
+            applied.add("put " + waypoint.getId());
+        }
+
+        @Override
+        public void remove(String id) {
+            applied.add("remove " + id);
+        }
+
+        @Override
+        public void clear() {
+            applied.add("clear");
+        }
+    }
+
+    @Test
+    void replaysEveryRecordInOrder() throws IOException {
+        Path file = directory.resolve("waypoints.journal");
+        try (WaypointJournal journal = new WaypointJournal(file)) {
+            journal.append(false, changes(waypoint("a"), waypoint("b")));
+            journal.append(true, removal("a"));
+        }
+
+        Recorder recorder = new Recorder();
+        assertEquals(4, new WaypointJournal(file).replay(recorder));
+        assertEquals(List.of("put a", "put b", "clear", "remove a"), recorder.applied);
+    }
+
+    @Test
+    void tornTailIsCutOffAndEarlierRecordsKept() throws IOException {
+        Path file = directory.resolve("waypoints.journal");
+        long intact;
+        try (WaypointJournal journal = new WaypointJournal(file)) {
+            journal.append(false, changes(waypoint("a"), waypoint("b")));
+            intact = journal.size();
+            journal.append(false, changes(waypoint("c")));
+        }
+        // A crash part way through writing the last record's payload
+        long torn = intact + (Files.size(file) - intact) / 2;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(torn);
+        }
+
+        Recorder recorder = new Recorder();
+        assertEquals(2, new WaypointJournal(file).replay(recorder));
+        assertEquals(List.of("put a", "put b"), recorder.applied);
+        assertEquals(intact, Files.size(file));
+
+        // Appends after recovery land right after the intact records
+        try (WaypointJournal journal = new WaypointJournal(file)) {
+            journal.append(false, changes(waypoint("d")));
+        }
+        recorder = new Recorder();
+        assertEquals(3, new WaypointJournal(file).replay(recorder));
+        assertEquals(List.of("put a", "put b", "put d"), recorder.applied);
+    }
+
+    @Test
+    void tornHeaderIsCutOff() throws IOException {
+        Path file = directory.resolve("waypoints.journal");
+        long intact;
+        try (WaypointJournal journal = new WaypointJournal(file)) {
+            journal.append(false, changes(waypoint("a")));
+            intact = journal.size();
+            journal.append(false, changes(waypoint("b")));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(intact + 3);
+        }
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, new WaypointJournal(file).replay(recorder));
+        assertEquals(List.of("put a"), recorder.applied);
+        assertEquals(intact, Files.size(file));
+    }
+
+    @Test
+    void corruptRecordStopsReplay() throws IOException {
+        Path file = directory.resolve("waypoints.journal");
+        long intact;
+        try (WaypointJournal journal = new WaypointJournal(file)) {
+            journal.append(false, changes(waypoint("a")));
+            intact = journal.size();
+            journal.append(false, changes(waypoint("b"), waypoint("c")));
+        }
+        // Flip a payload byte of the second record so its checksum fails
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) intact + 12] ^= 0x55;
+        Files.write(file, bytes);
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, new WaypointJournal(file).replay(recorder));
+        assertEquals(List.of("put a"), recorder.applied);
+        assertEquals(intact, Files.size(file));
+    }
+
+    private static Waypoint waypoint(String id) {
+        return new Waypoint(id, "Waypoint " + id, 1.5, 64, -20.25, "minecraft:overworld",
+                0x4CAF50, null, null, true, 1000L);
+    }
+
+    private static Map<String, Waypoint> changes(Waypoint... waypoints) {
+        Map<String, Waypoint> changes = new LinkedHashMap<>();
+        for (Waypoint waypoint : waypoints) {
+            changes.put(waypoint.getId(), waypoint);
+        }
+        return changes;
+    }
+
+    private static Map<String, Waypoint> removal(String id) {
+        Map<String, Waypoint> changes = new LinkedHashMap<>();
+        changes.put(id, null);
+        return changes;
+    }
+}